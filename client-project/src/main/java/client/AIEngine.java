@@ -0,0 +1,40 @@
+package client;
+
+import java.time.Duration;
+
+import common.GameBoard;
+
+/**
+ * A single-player opponent: anything that can pick a column for the side to
+ * move. {@link AIPlayer} (alpha-beta) and {@link MCTSPlayer} (Monte Carlo
+ * tree search) both implement it, so the client, the AI thread and the
+ * benchmarks can use either.
+ */
+public interface AIEngine {
+    /**
+     * Returns the column [0..6] to play on {@code board}, which must have
+     * the engine's side to move and is left unchanged. The engine decides
+     * how much work to do.
+     */
+    default int chooseColumn(GameBoard board) {
+        return chooseColumn(board, Cancellation.NEVER);
+    }
+
+    /**
+     * As {@link #chooseColumn(GameBoard)}, but returns early once
+     * {@code cancel} is cancelled; the answer is then meaningless and
+     * should be discarded.
+     */
+    int chooseColumn(GameBoard board, Cancellation cancel);
+
+    /** As {@link #chooseColumn(GameBoard)}, but spending about {@code budget}. */
+    int chooseColumn(GameBoard board, Duration budget);
+
+    /**
+     * Think on the opponent's time; {@code board} has the opponent to move.
+     * Returns when done or once {@code cancel} is cancelled. Engines that
+     * have nothing to gain from this ignore it.
+     */
+    default void ponder(GameBoard board, Cancellation cancel) {
+    }
+}
@@ -1,67 +1,580 @@
 package client;
 
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import common.GameBoard;
 
 /**
  * Connect-4 AI using minimax with alpha-beta pruning.
+ *
+ * Positions already searched are remembered in a transposition table keyed by
+ * {@link GameBoard#key()}. A position and its mirror image share one entry.
+ *
+ * With more than one thread the search runs "Young Brothers Wait" on a
+ * ForkJoinPool (see {@link SearchPools}): at every node deep enough to be
+ * worth splitting, the first move is searched alone to establish a bound,
+ * then the remaining moves are searched in parallel, all sharing the
+ * transposition table. Table entries only cut off nodes searched to exactly
+ * the same depth, so every entry is a true bound on the fixed-depth minimax
+ * value and the chosen column does not depend on thread count or scheduling.
+ *
+ * While the opponent thinks, {@link #ponder} searches each of their replies
+ * in turn, most likely first, exactly as chooseColumn would. The answers are
+ * kept, so once the real reply arrives its move is usually ready at once;
+ * a reply not reached in time still finds its subtree in the table.
+ *
+ * Every search leaves a {@link SearchStats} behind: node and leaf counts,
+ * cutoffs by move index, table probes and hits, time per iteration and the
+ * principal variation.
  */
-public class AIPlayer {
+public class AIPlayer implements AIEngine {
+    /** Default transposition table size: 2^20 entries (16 MB). */
+    public static final int DEFAULT_TT_ENTRIES = 1 << 20;
+
+    /** Scores at or beyond this magnitude are forced wins or losses. */
+    private static final int WIN_SCORE = 1_000_000;
+
+    /** Nodes with less remaining depth than this are never split. */
+    private static final int MIN_SPLIT_DEPTH = 8;
+
+    /** Columns from the centre outwards; central cells take part in more lines. */
+    private static final int[] CENTER_ORDER = { 3, 2, 4, 1, 5, 0, 6 };
+
+    /** History scores are halved once any of them passes this. */
+    private static final int HISTORY_LIMIT = 1 << 24;
+
+    private static final int MAX_PLY = GameBoard.ROWS * GameBoard.COLS;
+
     private final int aiPlayer, humanPlayer, maxDepth;
+    private final TranspositionTable tt;
+    private final ForkJoinPool pool;
+    private final Searcher     mainSearcher = new Searcher();
+    private OpeningBook        book;
+
+    // Per-search state; only the search itself sets stopped, on the deadline or on cancel
+    private volatile long    deadline;
+    private volatile Cancellation cancel = Cancellation.NEVER;
+    private volatile boolean stopped;
+    private int              lastScore;
+    private volatile SearchStats lastStats;
+
+    // Pondering: keys of the positions after each opponent reply, and our answers
+    private final long[]     ponderKeys  = new long[GameBoard.COLS];
+    private final int[]      ponderMoves = new int[GameBoard.COLS];
+    private final SearchStats[] ponderStats = new SearchStats[GameBoard.COLS];
+    private int              ponderCount;
 
     public AIPlayer(int aiPlayer, int maxDepth) {
+        this(aiPlayer, maxDepth, DEFAULT_TT_ENTRIES);
+    }
+
+    /**
+     * @param ttEntries transposition table capacity; larger tables keep more
+     *                  of the tree between moves at the cost of 16 bytes each
+     */
+    public AIPlayer(int aiPlayer, int maxDepth, int ttEntries) {
+        this(aiPlayer, maxDepth, ttEntries, 1);
+    }
+
+    /**
+     * @param threads number of search threads; 1 searches on the caller's
+     *                thread, more uses the shared ForkJoinPool of that size
+     */
+    public AIPlayer(int aiPlayer, int maxDepth, int ttEntries, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be >= 1");
         this.aiPlayer    = aiPlayer;
         this.humanPlayer = 3 - aiPlayer;
         this.maxDepth    = maxDepth;
+        this.tt          = new TranspositionTable(ttEntries);
+        this.pool        = threads > 1 ? SearchPools.get(threads) : null;
     }
 
-    /** Returns best column [0..6] for current board. */
-    public int chooseColumn(GameBoard board) {
-        int bestScore = Integer.MIN_VALUE, bestCol = 0;
-        for (int c = 0; c < GameBoard.COLS; c++) {
-            if (!board.isValidMove(c)) continue;
-            GameBoard b2 = board.copy();
-            b2.dropToken(c, aiPlayer);
-            int score = minimax(b2, maxDepth - 1,
-                                Integer.MIN_VALUE, Integer.MAX_VALUE, false);
-            if (score > bestScore) {
-                bestScore = score;
-                bestCol   = c;
-            }
+    /**
+     * Returns best column [0..6] for current board. The board is not
+     * modified; the search runs on a private copy using play/undo, so
+     * it must be the AI's turn on {@code board}.
+     */
+    @Override
+    public int chooseColumn(GameBoard board, Cancellation cancel) {
+        int pondered = ponderedMove(board);
+        if (pondered >= 0) return pondered;
+        int bookMove = bookMove(board);
+        if (bookMove >= 0) return bookMove;
+        long start = System.nanoTime();
+        SearchStats stats = new SearchStats();
+        tt.newSearch();
+        deadline    = Long.MAX_VALUE;
+        this.cancel = cancel;
+        stopped     = cancel.isCancelled();
+        int col = searchRoot(board, maxDepth, -1, stats);
+        finishStats(stats, board, col, lastScore, start);
+        return col;
+    }
+
+    /**
+     * Returns best column [0..6] found within the given time budget. Searches
+     * depth 1, 2, 3, ... until the budget runs out, trying the previous
+     * iteration's best move first, and answers with the deepest iteration that
+     * finished. Depth 1 always completes, however small the budget.
+     */
+    @Override
+    public int chooseColumn(GameBoard board, Duration budget) {
+        int bookMove = bookMove(board);
+        if (bookMove >= 0) return bookMove;
+        long start = System.nanoTime();
+        long end = start + budget.toNanos();
+        SearchStats stats = new SearchStats();
+        tt.newSearch();
+        cancel  = Cancellation.NEVER;
+        stopped = false;
+        int maxPlies = GameBoard.ROWS * GameBoard.COLS - board.getMoveCount();
+        int bestCol = -1, bestScore = 0;
+        for (int depth = 1; depth <= maxPlies; depth++) {
+            deadline = (depth == 1) ? Long.MAX_VALUE : end;
+            int col = searchRoot(board, depth, bestCol, stats);
+            if (stopped) break;
+            bestCol   = col;
+            bestScore = lastScore;
+            if (Math.abs(lastScore) >= WIN_SCORE) break;  // result is forced
+            if (System.nanoTime() >= end) break;
         }
+        finishStats(stats, board, bestCol, bestScore, start);
         return bestCol;
     }
 
-    private int minimax(GameBoard board, int depth,
-                        int alpha, int beta, boolean maximizing) {
-        if (board.checkWin(aiPlayer))    return  1_000_000 + depth;
-        if (board.checkWin(humanPlayer)) return -1_000_000 - depth;
-        if (board.isFull() || depth == 0) return evaluate(board);
+    /**
+     * Statistics of the last move this player chose, or null if it came
+     * from the opening book.
+     */
+    public SearchStats getLastStats() {
+        return lastStats;
+    }
 
-        if (maximizing) {
-            int maxEval = Integer.MIN_VALUE;
-            for (int c = 0; c < GameBoard.COLS; c++) {
-                if (!board.isValidMove(c)) continue;
-                GameBoard b2 = board.copy();
-                b2.dropToken(c, aiPlayer);
-                int eval = minimax(b2, depth - 1, alpha, beta, false);
-                maxEval = Math.max(maxEval, eval);
-                alpha   = Math.max(alpha, eval);
-                if (beta <= alpha) break;
+    /** For subclasses that answer some positions without AIPlayer's search. */
+    void setLastStats(SearchStats stats) {
+        lastStats = stats;
+    }
+
+    private void finishStats(SearchStats stats, GameBoard board, int col, int score, long start) {
+        stats.setResult(principalVariation(board, col, stats.getDepth()),
+                        score, System.nanoTime() - start);
+        lastStats = stats;
+    }
+
+    /** The chosen move followed by the table's best moves, up to depth moves. */
+    private int[] principalVariation(GameBoard board, int col, int depth) {
+        if (col < 0) return new int[0];
+        int[] line = new int[Math.max(depth, 1)];
+        int n = 0;
+        GameBoard b = board.copy();
+        line[n++] = col;
+        b.play(col);
+        while (n < line.length && !b.checkWin(1) && !b.checkWin(2) && !b.isFull()) {
+            int m = expectedReply(b);
+            if (m < 0 || !b.isValidMove(m)) break;
+            line[n++] = m;
+            b.play(m);
+        }
+        return Arrays.copyOf(line, n);
+    }
+
+    /**
+     * Answer positions found in this book straight from it, without
+     * searching; pass null to always search.
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /** Book move for the position, or -1 if there is no book entry. */
+    private int bookMove(GameBoard board) {
+        if (book == null || board.getMoveCount() >= book.getPlies()) return -1;
+        int col = book.lookupMove(board);
+        if (!board.isValidMove(col)) return -1;
+        lastStats = null;
+        return col;
+    }
+
+    /**
+     * Think on the opponent's time. {@code board} must have the opponent to
+     * move; each of their replies is searched with chooseColumn, the reply
+     * our last search expected first, and the answer is remembered for the
+     * next chooseColumn call. Runs until every reply is done or {@code cancel}
+     * is cancelled, and leaves {@code board} unchanged.
+     */
+    @Override
+    public void ponder(GameBoard board, Cancellation cancel) {
+        ponderCount = 0;
+        int opponent = board.playerToMove();
+        int expected = expectedReply(board);
+        for (int i = -1; i < GameBoard.COLS && !cancel.isCancelled(); i++) {
+            int c = (i < 0) ? expected : CENTER_ORDER[i];
+            if (c < 0 || (i >= 0 && c == expected) || !board.isValidMove(c)) continue;
+            GameBoard child = board.copy();
+            child.play(c);
+            if (child.checkWin(opponent) || child.isFull()) continue;
+            int col = chooseColumn(child, cancel);
+            if (cancel.isCancelled()) break;  // interrupted: the answer is not final
+            ponderKeys[ponderCount]  = child.key();
+            ponderMoves[ponderCount] = col;
+            ponderStats[ponderCount] = lastStats;
+            ponderCount++;
+        }
+    }
+
+    /**
+     * Our answer to this position if pondering already found it, else -1.
+     * On a hit the statistics of that search become the last statistics.
+     */
+    int ponderedMove(GameBoard board) {
+        long key = board.key();
+        for (int i = 0; i < ponderCount; i++) {
+            if (ponderKeys[i] == key) {
+                lastStats = ponderStats[i];
+                return ponderMoves[i];
+            }
+        }
+        return -1;
+    }
+
+    /** The table's best move for the side to move on {@code board}, or -1. */
+    private int expectedReply(GameBoard board) {
+        long key    = board.key();
+        long mirror = GameBoard.mirrorKey(key);
+        long entry  = tt.probe(Math.min(key, mirror));
+        if (entry == 0) return -1;
+        int move = TranspositionTable.move(entry);
+        return (move >= 0 && mirror < key) ? GameBoard.COLS - 1 - move : move;
+    }
+
+    /** Number of search threads this player uses. */
+    public int getThreads() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    /**
+     * Forget everything learned from earlier searches: the table, move
+     * ordering and pondered answers. The next search runs as on a new
+     * player; benchmarks use this to time cold searches.
+     */
+    void forgetSearches() {
+        tt.clear();
+        mainSearcher.forget();
+        ponderCount = 0;
+    }
+
+    /**
+     * Full-width search of every root move to the given depth, trying
+     * {@code firstMove} (if valid) before the others. Sets lastScore.
+     */
+    private int searchRoot(GameBoard board, int depth, int firstMove, SearchStats stats) {
+        Searcher s = mainSearcher;
+        s.reset(board.copy());
+        long start = System.nanoTime();
+        int[] result = (pool == null)
+            ? s.root(depth, firstMove)
+            : pool.invoke(new RootTask(s, depth, firstMove));
+        stats.addCounts(s.nodes, s.leaves, s.ttProbes, s.ttHits, s.cutoffs);
+        if (!stopped) stats.addIteration(depth, System.nanoTime() - start, s.nodes);
+        lastScore = result[1];
+        return result[0];
+    }
+
+    /** Runs the root search inside the pool so that it may fork. */
+    private static final class RootTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Searcher s;
+        private final int depth, firstMove;
+
+        RootTask(Searcher s, int depth, int firstMove) {
+            this.s = s;
+            this.depth = depth;
+            this.firstMove = firstMove;
+        }
+
+        @Override protected int[] compute() {
+            return s.root(depth, firstMove);
+        }
+    }
+
+    /** Searches one younger brother on its own board copy. */
+    private final class ChildTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Searcher s;
+        private final int depth, alpha, beta;
+        private final boolean maximizing;
+
+        ChildTask(GameBoard parent, int col, int depth,
+                  int alpha, int beta, boolean maximizing) {
+            GameBoard b = parent.copy();
+            b.play(col);
+            this.s = new Searcher();
+            this.s.reset(b);
+            this.depth = depth;
+            this.alpha = alpha;
+            this.beta  = beta;
+            this.maximizing = maximizing;
+        }
+
+        @Override protected Integer compute() {
+            return s.minimax(depth, alpha, beta, maximizing);
+        }
+    }
+
+    /**
+     * One thread's view of a search: its own board, moved with play/undo,
+     * its own counters and its own move-ordering tables. The counters of a
+     * younger brother's searcher are added to its parent's after the join.
+     *
+     * Moves are tried in this order: the transposition table move, the two
+     * killer moves that last caused a cutoff at the same ply, then the rest
+     * by history score (how often and how deep the cell caused cutoffs),
+     * ties going to the more central column.
+     */
+    private final class Searcher {
+        private GameBoard board;
+        private long nodes, leaves, ttProbes, ttHits;
+        private final long[] cutoffs = new long[GameBoard.COLS];
+        private final int[][] killers = new int[MAX_PLY][2];
+        private final int[][] history = new int[2][GameBoard.COLS * GameBoard.H1];
+        private final int[][] moveBuf  = new int[MAX_PLY][GameBoard.COLS];
+        private final int[][] scoreBuf = new int[MAX_PLY][GameBoard.COLS];
+
+        Searcher() {
+            for (int[] k : killers) Arrays.fill(k, -1);
+        }
+
+        /** Start a search of {@code b}; history from earlier searches fades by half. */
+        void reset(GameBoard b) {
+            board = b;
+            nodes = leaves = ttProbes = ttHits = 0;
+            Arrays.fill(cutoffs, 0);
+            ageHistory();
+        }
+
+        /** Add the counters of a finished younger brother's search. */
+        private void absorb(Searcher child) {
+            nodes    += child.nodes;
+            leaves   += child.leaves;
+            ttProbes += child.ttProbes;
+            ttHits   += child.ttHits;
+            for (int i = 0; i < cutoffs.length; i++) cutoffs[i] += child.cutoffs[i];
+        }
+
+        /** Returns {bestCol, bestScore}. */
+        int[] root(int depth, int firstMove) {
+            nodes++;
+            int bestScore = Integer.MIN_VALUE, bestCol = 0;
+            List<ChildTask> younger = null;
+            int[] youngerCols = new int[GameBoard.COLS];
+            // Root order is fixed, so ties resolve the same way on every run
+            for (int i = -1; i < GameBoard.COLS; i++) {
+                int c = (i < 0) ? firstMove : CENTER_ORDER[i];
+                if (c < 0 || (i >= 0 && c == firstMove) || !board.isValidMove(c)) continue;
+                if (pool != null && bestScore != Integer.MIN_VALUE
+                        && depth >= MIN_SPLIT_DEPTH) {
+                    // Eldest brother is done: hand the rest to the pool
+                    if (younger == null) younger = new ArrayList<>();
+                    youngerCols[younger.size()] = c;
+                    younger.add(new ChildTask(board, c, depth - 1,
+                                              bestScore, Integer.MAX_VALUE, false));
+                    continue;
+                }
+                board.play(c);
+                // Only a strictly better score can change the choice, so the
+                // best score so far is a safe lower bound for the next move.
+                int score = minimax(depth - 1, bestScore, Integer.MAX_VALUE, false);
+                board.undo();
+                if (stopped) break;
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestCol   = c;
+                }
+            }
+            if (younger != null) {
+                ForkJoinTask.invokeAll(younger);
+                for (ChildTask t : younger) absorb(t.s);
+                // Ties keep the earlier move, exactly as the sequential loop does
+                for (int k = 0; k < younger.size() && !stopped; k++) {
+                    int score = younger.get(k).join();
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestCol   = youngerCols[k];
+                    }
+                }
+            }
+            return new int[] { bestCol, bestScore };
+        }
+
+        int minimax(int depth, int alpha, int beta, boolean maximizing) {
+            if ((++nodes & 1023) == 0
+                    && (System.nanoTime() >= deadline || cancel.isCancelled())) stopped = true;
+            if (board.checkWin(aiPlayer))    return  WIN_SCORE + depth;
+            if (board.checkWin(humanPlayer)) return -WIN_SCORE - depth;
+            if (board.isFull() || depth == 0) {
+                leaves++;
+                return evaluate(board);
             }
-            return maxEval;
-        } else {
-            int minEval = Integer.MAX_VALUE;
-            for (int c = 0; c < GameBoard.COLS; c++) {
+            if (stopped) return 0;
+
+            // Fold mirror images onto the smaller key
+            long key    = board.key();
+            long mirror = GameBoard.mirrorKey(key);
+            boolean flipped = mirror < key;
+            if (flipped) key = mirror;
+
+            int alphaOrig = alpha, betaOrig = beta;
+            int ttMove = -1;
+            long entry = tt.probe(key);
+            ttProbes++;
+            if (entry != 0) {
+                ttHits++;
+                ttMove = TranspositionTable.move(entry);
+                if (ttMove >= 0 && flipped) ttMove = GameBoard.COLS - 1 - ttMove;
+                if (TranspositionTable.depth(entry) == depth) {
+                    int v = fromTable(TranspositionTable.value(entry), depth);
+                    switch (TranspositionTable.bound(entry)) {
+                        case TranspositionTable.EXACT: return v;
+                        case TranspositionTable.LOWER: alpha = Math.max(alpha, v); break;
+                        case TranspositionTable.UPPER: beta  = Math.min(beta, v);  break;
+                    }
+                    if (beta <= alpha) return v;
+                }
+            }
+
+            int best = maximizing ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+            int bestMove = -1;
+            boolean split = pool != null && depth >= MIN_SPLIT_DEPTH;
+            List<ChildTask> younger = null;
+            int[] youngerCols = split ? new int[GameBoard.COLS] : null;
+            int ply = board.getMoveCount();
+            int[] moves = moveBuf[ply];
+            int n = orderMoves(ply, ttMove);
+            for (int i = 0; i < n; i++) {
+                int c = moves[i];
+                if (split && bestMove >= 0) {
+                    if (younger == null) younger = new ArrayList<>();
+                    youngerCols[younger.size()] = c;
+                    younger.add(new ChildTask(board, c, depth - 1,
+                                              alpha, beta, !maximizing));
+                    continue;
+                }
+                board.play(c);
+                int eval = minimax(depth - 1, alpha, beta, !maximizing);
+                board.undo();
+                if (stopped) return 0;
+                if (maximizing ? eval > best : eval < best) {
+                    best     = eval;
+                    bestMove = c;
+                }
+                if (maximizing) alpha = Math.max(alpha, eval);
+                else            beta  = Math.min(beta, eval);
+                if (beta <= alpha) {
+                    cutoffs[i]++;
+                    recordCutoff(ply, c, depth);
+                    break;
+                }
+            }
+            if (younger != null && beta > alpha) {
+                ForkJoinTask.invokeAll(younger);
+                for (ChildTask t : younger) absorb(t.s);
+                if (stopped) return 0;
+                for (int k = 0; k < younger.size(); k++) {
+                    int eval = younger.get(k).join();
+                    if (maximizing ? eval > best : eval < best) {
+                        best     = eval;
+                        bestMove = youngerCols[k];
+                    }
+                }
+            }
+
+            int bound = best <= alphaOrig ? TranspositionTable.UPPER
+                      : best >= betaOrig  ? TranspositionTable.LOWER
+                      : TranspositionTable.EXACT;
+            if (flipped) bestMove = GameBoard.COLS - 1 - bestMove;
+            tt.store(key, toTable(best, depth), depth, bound, bestMove);
+            return best;
+        }
+
+        /** Fills moveBuf[ply] with the legal moves, best first; returns how many. */
+        private int orderMoves(int ply, int ttMove) {
+            int[] moves  = moveBuf[ply];
+            int[] scores = scoreBuf[ply];
+            int[] hist   = history[board.playerToMove() - 1];
+            int k0 = killers[ply][0], k1 = killers[ply][1];
+            int n = 0;
+            for (int c : CENTER_ORDER) {
                 if (!board.isValidMove(c)) continue;
-                GameBoard b2 = board.copy();
-                b2.dropToken(c, humanPlayer);
-                int eval = minimax(b2, depth - 1, alpha, beta, true);
-                minEval = Math.min(minEval, eval);
-                beta    = Math.min(beta, eval);
-                if (beta <= alpha) break;
+                int score;
+                if      (c == ttMove) score = Integer.MAX_VALUE;
+                else if (c == k0)     score = Integer.MAX_VALUE - 1;
+                else if (c == k1)     score = Integer.MAX_VALUE - 2;
+                else                  score = hist[cell(c)];
+                // Insertion sort; stable, so equal scores keep centre-out order
+                int j = n++;
+                while (j > 0 && scores[j - 1] < score) {
+                    moves[j]  = moves[j - 1];
+                    scores[j] = scores[j - 1];
+                    j--;
+                }
+                moves[j]  = c;
+                scores[j] = score;
+            }
+            return n;
+        }
+
+        /** Remember that playing {@code col} at this ply refuted the position. */
+        private void recordCutoff(int ply, int col, int depth) {
+            if (killers[ply][0] != col) {
+                killers[ply][1] = killers[ply][0];
+                killers[ply][0] = col;
             }
-            return minEval;
+            int[] hist = history[board.playerToMove() - 1];
+            int i = cell(col);
+            hist[i] += depth * depth;
+            if (hist[i] > HISTORY_LIMIT) ageHistory();
         }
+
+        /** Bit index of the cell the next token in {@code col} would fill. */
+        private int cell(int col) {
+            return col * GameBoard.H1 + board.columnHeight(col);
+        }
+
+        /** Drop the killers and history of every earlier search. */
+        void forget() {
+            for (int[] k : killers) Arrays.fill(k, -1);
+            for (int[] h : history) Arrays.fill(h, 0);
+        }
+
+        private void ageHistory() {
+            for (int[] h : history) {
+                for (int i = 0; i < h.length; i++) h[i] >>= 1;
+            }
+        }
+    }
+
+    /*
+     * Win scores depend on the remaining depth, so the table stores them
+     * relative to the node and re-bases them for the depth of each probe.
+     */
+    private static int toTable(int v, int depth) {
+        if (v >=  WIN_SCORE) return v - depth;
+        if (v <= -WIN_SCORE) return v + depth;
+        return v;
+    }
+
+    private static int fromTable(int v, int depth) {
+        if (v >=  WIN_SCORE - GameBoard.ROWS * GameBoard.COLS) return v + depth;
+        if (v <= -WIN_SCORE + GameBoard.ROWS * GameBoard.COLS) return v - depth;
+        return v;
     }
 
     private int evaluate(GameBoard board) {
@@ -0,0 +1,78 @@
+package client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import common.GameBoard;
+
+/**
+ * AIService: runs AI searches on a background thread so the Swing
+ * Event Dispatch Thread never blocks while the AI thinks.
+ *
+ * Searches run one at a time, in submission order. Each gets its own
+ * {@link Cancellation}: cancelling the returned future cancels it, which
+ * stops that search (or keeps it from starting) however the two race, and a
+ * cancelled future never completes with a move.
+ */
+public class AIService {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "AI-Search");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Start choosing a move for {@code ai} on a snapshot of {@code board}.
+     * The future completes on the search thread; callers that touch Swing
+     * must hop back to the EDT themselves.
+     */
+    public CompletableFuture<Integer> chooseColumn(AIEngine ai, GameBoard board) {
+        GameBoard snapshot = board.copy();
+        return submit(cancel -> ai.chooseColumn(snapshot, cancel));
+    }
+
+    /**
+     * Let {@code ai} ponder a snapshot of {@code board}, where it is the
+     * opponent's turn. Cancel the future as soon as the opponent moves; the
+     * search queued after it then starts straight away.
+     */
+    public CompletableFuture<Void> ponder(AIEngine ai, GameBoard board) {
+        GameBoard snapshot = board.copy();
+        return submit(cancel -> {
+            ai.ponder(snapshot, cancel);
+            return null;
+        });
+    }
+
+    /** One search, run under the cancellation made for it. */
+    private interface Search<T> {
+        T run(Cancellation cancel) throws Exception;
+    }
+
+    private <T> CompletableFuture<T> submit(Search<T> search) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Cancellation cancel = new Cancellation();
+        Future<?> task = executor.submit(() -> {
+            if (result.isDone()) return;  // cancelled while queued
+            try {
+                result.complete(search.run(cancel));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        result.whenComplete((col, err) -> {
+            if (result.isCancelled()) {
+                task.cancel(false);
+                cancel.cancel();
+            }
+        });
+        return result;
+    }
+
+    /** Stop accepting work; a search already running is left to finish. */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
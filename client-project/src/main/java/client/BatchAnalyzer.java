@@ -0,0 +1,228 @@
+package client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import common.GameBoard;
+
+/**
+ * Offline tool that annotates finished games with the engine's view of every
+ * position: the best move, its score and the move actually played.
+ *
+ * The reader turns each game into positions and hands them to a fixed pool
+ * of search threads through a bounded queue, so a huge input never piles up
+ * in memory. Every thread has its own AIPlayer (one per side). Positions
+ * are looked up in a cache shared by all threads first, keyed by position
+ * with mirror images folded together, so a position that recurs (openings
+ * above all) is searched once. The cache stops taking new positions once it
+ * holds CACHE_LIMIT of them; the openings, which recur most, come first and
+ * stay, and later new positions are simply searched without caching. A
+ * single writer prints rows in input order as soon as they are ready.
+ *
+ * Input: one game per line, the columns played (0-6), e.g. "3342156" or
+ * "3 3 4 2"; blank lines and lines starting with # are skipped.
+ * Output: CSV, game,ply,player,played,best,score,cached; score is from the
+ * side to move, as AIPlayer scores it. A row whose search failed has both
+ * best and score empty.
+ *
+ * Usage: BatchAnalyzer &lt;games-file&gt; &lt;out-file&gt; [depth=d] [threads=t]
+ */
+public class BatchAnalyzer {
+    /** Table size for each search thread's players; small, since positions are independent. */
+    private static final int TT_ENTRIES = 1 << 18;
+
+    /** Rows waiting for the writer, and tasks waiting for a search thread. */
+    private static final int QUEUE_LIMIT = 4096;
+
+    /** Positions the cache holds at most, a few tens of megabytes. */
+    private static final int CACHE_LIMIT = 1 << 18;
+
+    /** One output row; the result fills in when the position has been searched. */
+    private static final class Row {
+        final int game, ply, player, played;
+        final CompletableFuture<Long> result;
+        final boolean flipped;   // position is the mirror of its cache key
+        final boolean cached;
+
+        Row(int game, int ply, int player, int played,
+            CompletableFuture<Long> result, boolean flipped, boolean cached) {
+            this.game    = game;
+            this.ply     = ply;
+            this.player  = player;
+            this.played  = played;
+            this.result  = result;
+            this.flipped = flipped;
+            this.cached  = cached;
+        }
+    }
+
+    private static final Row END = new Row(-1, -1, 0, 0, null, false, false);
+
+    private final ThreadPoolExecutor workers;
+    private final ThreadLocal<AIPlayer[]> players;
+    /** Canonical position key -> (best move in canonical orientation, score). */
+    private final ConcurrentHashMap<Long, CompletableFuture<Long>> cache = new ConcurrentHashMap<>();
+    private final AtomicLong searched = new AtomicLong();
+    private long positions;
+
+    public BatchAnalyzer(int depth, int threads) {
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_LIMIT), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.players = ThreadLocal.withInitial(() -> new AIPlayer[] {
+            new AIPlayer(1, depth, TT_ENTRIES), new AIPlayer(2, depth, TT_ENTRIES) });
+    }
+
+    /** Analyze every game in {@code in} and write the rows to {@code out}. */
+    public void run(Path in, Path out) throws IOException, InterruptedException {
+        BlockingQueue<Row> rows = new ArrayBlockingQueue<>(QUEUE_LIMIT);
+        IOException[] writeError = new IOException[1];
+        Thread writer = new Thread(() -> {
+            try (BufferedWriter w = Files.newBufferedWriter(out)) {
+                write(rows, w);
+            } catch (IOException e) {
+                writeError[0] = e;
+                drain(rows);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "Analysis-Writer");
+        writer.start();
+
+        try (BufferedReader r = Files.newBufferedReader(in)) {
+            String line;
+            int game = 0;
+            while ((line = r.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                submitGame(++game, line, rows);
+            }
+        } finally {
+            rows.put(END);
+            writer.join();
+            workers.shutdown();
+        }
+        if (writeError[0] != null) throw writeError[0];
+    }
+
+    /** Queue every position of one game, the one before each move. */
+    private void submitGame(int game, String moves, BlockingQueue<Row> rows) throws InterruptedException {
+        GameBoard b = new GameBoard();
+        int ply = 0;
+        for (char ch : moves.toCharArray()) {
+            if (ch == ' ' || ch == ',') continue;
+            int col = ch - '0';
+            if (!b.isValidMove(col)) {
+                System.err.println("Game " + game + ": illegal move '" + ch + "' at ply " + ply + ", rest skipped");
+                return;
+            }
+            int player = b.playerToMove();
+            long key = b.key();
+            long mirror = GameBoard.mirrorKey(key);
+            long canon = Math.min(key, mirror);
+            CompletableFuture<Long> mine = new CompletableFuture<>();
+            // Only this thread inserts, so the size check cannot overshoot
+            CompletableFuture<Long> known = cache.size() < CACHE_LIMIT
+                ? cache.putIfAbsent(canon, mine) : cache.get(canon);
+            if (known == null) {
+                GameBoard snapshot = b.copy();
+                workers.execute(() -> search(snapshot, canon != key, mine));
+            }
+            rows.put(new Row(game, ply, player, col, known != null ? known : mine,
+                             canon != key, known != null));
+            positions++;
+            ply++;
+            if (b.play(col, player) != GameBoard.Result.CONTINUE) return;
+        }
+    }
+
+    /** Search one position on a worker thread; the result is stored canonically. */
+    private void search(GameBoard b, boolean flipped, CompletableFuture<Long> result) {
+        try {
+            AIPlayer ai = players.get()[b.playerToMove() - 1];
+            int best = ai.chooseColumn(b);
+            int score = ai.getLastStats().getScore();
+            if (flipped) best = GameBoard.COLS - 1 - best;
+            searched.incrementAndGet();
+            result.complete(((long) best << 32) | (score & 0xFFFFFFFFL));
+        } catch (Throwable t) {
+            result.completeExceptionally(t);
+        }
+    }
+
+    /** Writer thread: print rows in order, flushing at the end of every game. */
+    private void write(BlockingQueue<Row> rows, BufferedWriter w) throws IOException, InterruptedException {
+        w.write("game,ply,player,played,best,score,cached");
+        w.newLine();
+        Row row;
+        int lastGame = -1;
+        while ((row = rows.take()) != END) {
+            if (row.game != lastGame && lastGame >= 0) w.flush();
+            lastGame = row.game;
+            String result;
+            try {
+                long packed = row.result.join();
+                int best = (int) (packed >>> 32);
+                if (row.flipped) best = GameBoard.COLS - 1 - best;
+                result = best + "," + (int) packed;
+            } catch (CompletionException e) {
+                System.err.println("Game " + row.game + " ply " + row.ply + ": " + e.getCause());
+                result = ",";
+            }
+            w.write(row.game + "," + row.ply + "," + row.player + "," + row.played + ","
+                + result + "," + row.cached);
+            w.newLine();
+        }
+    }
+
+    /** After a write error: keep taking rows so the reader is never blocked. */
+    private static void drain(BlockingQueue<Row> rows) {
+        try {
+            while (rows.take() != END) {
+                // discard
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Positions read so far, including those answered from the cache. */
+    public long getPositions() {
+        return positions;
+    }
+
+    /** Positions actually searched: the distinct ones. */
+    public long getSearched() {
+        return searched.get();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BatchAnalyzer <games-file> <out-file> [depth=<d>] [threads=<t>]");
+            System.exit(1);
+        }
+        int depth = 10, threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("depth="))        depth   = Integer.parseInt(args[i].substring(6));
+            else if (args[i].startsWith("threads=")) threads = Integer.parseInt(args[i].substring(8));
+        }
+        long t0 = System.nanoTime();
+        BatchAnalyzer analyzer = new BatchAnalyzer(depth, threads);
+        analyzer.run(Paths.get(args[0]), Paths.get(args[1]));
+        double secs = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("%d positions (%d searched, %d from cache) in %.1f s: %.0f positions/s%n",
+            analyzer.getPositions(), analyzer.getSearched(),
+            analyzer.getPositions() - analyzer.getSearched(), secs, analyzer.getPositions() / secs);
+    }
+}
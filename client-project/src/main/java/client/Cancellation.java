@@ -0,0 +1,23 @@
+package client;
+
+/**
+ * Stop signal for one search. Whoever starts the search makes a new one and
+ * may cancel it from any thread; the engine only ever reads it. Nothing
+ * clears it, so a cancel that lands before the search has even started
+ * still stops it.
+ */
+public final class Cancellation {
+    /** Never cancelled: for searches that always run to the end. */
+    public static final Cancellation NEVER = new Cancellation();
+
+    private volatile boolean cancelled;
+
+    /** Ask the search to return as soon as possible; its answer is then meaningless. */
+    public void cancel() {
+        if (this != NEVER) cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
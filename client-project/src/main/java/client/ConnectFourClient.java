@@ -4,13 +4,25 @@ import javax.swing.*;
 import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import common.BinaryProtocol;
+import common.GameBoard;
 import common.Protocol;
 
 public class ConnectFourClient {
     private static final int ROWS = 6, COLS = 7;
+    /** Optional book built by OpeningBookBuilder, looked up in the working directory. */
+    private static final Path BOOK_FILE = Paths.get("openingbook.bin");
+    /** Monte Carlo level: playouts per move, shared out over the available cores. */
+    private static final int  MCTS_PLAYOUTS = 200_000;
+    private static final int  MCTS_THREADS  = Math.min(4, Runtime.getRuntime().availableProcessors());
 
     private JFrame            frame;
     private CardLayout        cardLayout;
@@ -23,14 +35,24 @@ public class ConnectFourClient {
     private JTextPane         chatArea;
     private JTextField        chatField;
     private JLabel            statusLabel;
+    private JLabel            aiStatsLabel;
     private NetworkHandler    network;
     private String            username;
+    /** Sequence number the next MOVE_APPLIED should carry. */
+    private int               nextMoveSeq;
+    /** A RESYNC is out; moves are ignored until its BOARD arrives. */
+    private boolean           resyncPending;
 
     // === AI fields ===
     private boolean singlePlayerMode = false;
     private GameBoard localBoard;
-    private AIPlayer  ai;
+    private AIEngine  ai;
+    private OpeningBook openingBook;
     private boolean   gameOver = false;
+    private final AIService aiService = new AIService();
+    /** Search for the AI's next move, or null when it is not thinking. */
+    private CompletableFuture<Integer> pendingAiMove;
+    private CompletableFuture<Void>    pondering;
 
     public ConnectFourClient(String serverIP, int port) {
         try {
@@ -58,15 +80,22 @@ public class ConnectFourClient {
         loginPanel = new LoginPanel(new LoginPanel.LoginListener() {
             @Override public void onLogin(String u, String p) {
                 username = u;
-                network.sendMessage(Protocol.LOGIN + ":" + u + ":" + p);
+                network.sendMessage(Protocol.LOGIN + ":" + u + ":" + p
+                    + ":" + BinaryProtocol.VERSION + ":" + Protocol.DELTA);
                 new SwingWorker<String,Void>() {
                     @Override protected String doInBackground() throws Exception {
-                        return network.readMessage();
+                        String resp = network.readMessage();
+                        // switch before the listener starts reading frames
+                        if (resp != null && resp.startsWith(Protocol.LOGIN_SUCCESS)
+                                && Arrays.asList(resp.split(":")).contains(BinaryProtocol.VERSION)) {
+                            network.enableBinary();
+                        }
+                        return resp;
                     }
                     @Override protected void done() {
                         try {
                             String resp = get();
-                            if (Protocol.LOGIN_SUCCESS.equals(resp)) {
+                            if (resp != null && resp.startsWith(Protocol.LOGIN_SUCCESS)) {
                                 cardLayout.show(mainPanel, "home");
                                 startNetworkListener();
                             } else {
@@ -128,11 +157,27 @@ public class ConnectFourClient {
                 cardLayout.show(mainPanel, "game");
             }
             @Override public void onSinglePlayer() {
+                String[] levels = { "Easy", "Normal", "Monte Carlo", "Perfect" };
+                int level = JOptionPane.showOptionDialog(frame,
+                    "Choose AI difficulty:", "Single Player",
+                    JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE,
+                    null, levels, levels[1]);
+                if (level < 0) return;
+                cancelAiMove();
                 singlePlayerMode = true;
                 gameOver = false;
                 localBoard = new GameBoard();
-                ai         = new AIPlayer(2, 5);
-                boardPanel.updateBoard(localBoard.serialize());
+                switch (level) {
+                    case 0:  ai = new AIPlayer(2, 2);    break;
+                    case 2:  ai = new MCTSPlayer(MCTS_PLAYOUTS, MCTS_THREADS);  break;
+                    case 3:  ai = new PerfectPlayer(2);  break;
+                    default: ai = new AIPlayer(2, 8);    break;
+                }
+                if (level > 0 && ai instanceof AIPlayer) {
+                    if (openingBook == null) openingBook = OpeningBook.openIfPresent(BOOK_FILE);
+                    ((AIPlayer) ai).setOpeningBook(openingBook);
+                }
+                boardPanel.updateBoard(localBoard.stones(1), localBoard.stones(2));
                 boardPanel.setInteractive(true);
                 chatArea.setText("");
                 statusLabel.setText("Your turn");
@@ -177,12 +222,26 @@ public class ConnectFourClient {
         JButton leaveBtn = new JButton("Leave Game");
         leaveBtn.addActionListener((ActionEvent e) -> {
             if (singlePlayerMode) {
+                cancelAiMove();
                 cardLayout.show(mainPanel, "home");
             } else {
                 network.sendMessage(Protocol.LEAVE);
             }
         });
+        // AI search statistics; F3 (or -Dconnect4.debug=true) shows them
+        aiStatsLabel = new JLabel();
+        aiStatsLabel.setFont(new Font("Monospaced", Font.PLAIN, 11));
+        aiStatsLabel.setVisible(Boolean.getBoolean("connect4.debug"));
+        gamePanel.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+                 .put(KeyStroke.getKeyStroke("F3"), "toggleAiStats");
+        gamePanel.getActionMap().put("toggleAiStats", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e) {
+                aiStatsLabel.setVisible(!aiStatsLabel.isVisible());
+            }
+        });
+
         JPanel topBar = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        topBar.add(aiStatsLabel);
         topBar.add(leaveBtn);
         gamePanel.add(topBar, BorderLayout.NORTH);
 
@@ -224,7 +283,7 @@ public class ConnectFourClient {
             if (gameOver) return;
             int row = localBoard.dropToken(col, 1);
             if (row < 0) return;
-            boardPanel.updateBoard(localBoard.serialize());
+            boardPanel.updateBoard(localBoard.stones(1), localBoard.stones(2));
             if (localBoard.checkWin(1)) {
                 statusLabel.setText("You win!");
                 boardPanel.setInteractive(false);
@@ -241,18 +300,53 @@ public class ConnectFourClient {
             }
             statusLabel.setText("AI is thinking...");
             boardPanel.setInteractive(false);
-            Timer t = new Timer(300, (ActionEvent e) -> aiMove());
-            t.setRepeats(false);
-            t.start();
+            stopPondering();
+            startAiMove();
         } else {
             network.sendMessage(Protocol.MOVE + ":" + col);
         }
     }
 
-    private void aiMove() {
-        int aiCol = ai.chooseColumn(localBoard);
+    /** Search off the EDT; the move is applied back on the EDT when ready. */
+    private void startAiMove() {
+        CompletableFuture<Integer> f = aiService.chooseColumn(ai, localBoard);
+        pendingAiMove = f;
+        f.whenComplete((col, err) -> SwingUtilities.invokeLater(() -> {
+            if (f != pendingAiMove || f.isCancelled()) return;  // superseded
+            pendingAiMove = null;
+            if (err != null) {
+                showError("AI failed: " + err.getMessage());
+                return;
+            }
+            aiMove(col);
+        }));
+    }
+
+    /** Abandon the AI's current search, if any. */
+    private void cancelAiMove() {
+        stopPondering();
+        if (pendingAiMove != null) {
+            pendingAiMove.cancel(false);
+            pendingAiMove = null;
+        }
+    }
+
+    /** Let the AI search the player's likely replies while they decide. */
+    private void startPondering() {
+        pondering = aiService.ponder(ai, localBoard);
+    }
+
+    private void stopPondering() {
+        if (pondering != null) {
+            pondering.cancel(false);
+            pondering = null;
+        }
+    }
+
+    private void aiMove(int aiCol) {
+        showAiStats();
         localBoard.dropToken(aiCol, 2);
-        boardPanel.updateBoard(localBoard.serialize());
+        boardPanel.updateBoard(localBoard.stones(1), localBoard.stones(2));
         if (localBoard.checkWin(2)) {
             statusLabel.setText("AI wins!");
             boardPanel.setInteractive(false);
@@ -266,15 +360,27 @@ public class ConnectFourClient {
         } else {
             statusLabel.setText("Your turn");
             boardPanel.setInteractive(true);
+            startPondering();
         }
     }
 
+    /** Put the statistics of the AI's last search in the debug overlay. */
+    private void showAiStats() {
+        if (!(ai instanceof AIPlayer)) {
+            aiStatsLabel.setText("");
+            return;
+        }
+        SearchStats s = ((AIPlayer) ai).getLastStats();
+        aiStatsLabel.setText(s != null ? s.toString() : "book move");
+    }
+
     private void promptAiReplay() {
         int choice = JOptionPane.showConfirmDialog(
             frame, "Play again?", "Replay", JOptionPane.YES_NO_OPTION);
         if (choice == JOptionPane.YES_OPTION) {
+            cancelAiMove();
             localBoard = new GameBoard();
-            boardPanel.updateBoard(localBoard.serialize());
+            boardPanel.updateBoard(localBoard.stones(1), localBoard.stones(2));
             gameOver = false;
             statusLabel.setText("Your turn");
             boardPanel.setInteractive(true);
@@ -299,10 +405,27 @@ public class ConnectFourClient {
     private void startNetworkListener() {
         new Thread(() -> {
             try {
-                String line;
-                while ((line = network.readMessage()) != null) {
-                    final String msg = line;
-                    SwingUtilities.invokeLater(() -> handleMessage(msg));
+                if (network.isBinary()) {
+                    ByteBuffer frame;
+                    while ((frame = network.readFrame()) != null) {
+                        if (BinaryProtocol.op(frame) == BinaryProtocol.Op.BOARD) {
+                            long p1 = BinaryProtocol.boardPlayer1(frame);
+                            long p2 = BinaryProtocol.boardPlayer2(frame);
+                            SwingUtilities.invokeLater(() -> {
+                                boardPanel.updateBoard(p1, p2);
+                                onBoardSnapshot();
+                            });
+                        } else {
+                            final String msg = BinaryProtocol.toText(frame);
+                            SwingUtilities.invokeLater(() -> handleMessage(msg));
+                        }
+                    }
+                } else {
+                    String line;
+                    while ((line = network.readMessage()) != null) {
+                        final String msg = line;
+                        SwingUtilities.invokeLater(() -> handleMessage(msg));
+                    }
                 }
             } catch (Exception e) {
                 showError("Disconnected from server.");
@@ -310,9 +433,38 @@ public class ConnectFourClient {
         }).start();
     }
 
+    /** A whole board arrived: the next move is the one after its last stone. */
+    private void onBoardSnapshot() {
+        nextMoveSeq   = boardPanel.stoneCount() + 1;
+        resyncPending = false;
+    }
+
+    /** "seq,col,row,player": draw the one stone, or ask for the board if a move was missed. */
+    private void onMoveApplied(String delta) {
+        if (resyncPending) return;  // the board on its way includes this move
+        String[] n = delta.split(",");
+        try {
+            int seq = Integer.parseInt(n[0]);
+            if (seq < nextMoveSeq) return;  // already on the board
+            if (seq == nextMoveSeq) {
+                boardPanel.placeStone(Integer.parseInt(n[2]), Integer.parseInt(n[1]), Integer.parseInt(n[3]));
+                nextMoveSeq++;
+                return;
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            // unreadable: start over from a full board
+        }
+        resyncPending = true;
+        network.sendMessage(Protocol.RESYNC);
+    }
+
     private void handleMessage(String msg) {
         if (msg.startsWith(Protocol.BOARD + ":")) {
             boardPanel.updateBoard(msg.substring((Protocol.BOARD + ":").length()));
+            onBoardSnapshot();
+        }
+        else if (msg.startsWith(Protocol.MOVE_APPLIED + ":")) {
+            onMoveApplied(msg.substring((Protocol.MOVE_APPLIED + ":").length()));
         }
         else if (msg.equals(Protocol.YOUR_TURN)) {
             statusLabel.setText("Your turn! Click a column.");
@@ -3,6 +3,8 @@ package client;
 import javax.swing.*;
 import java.awt.*;
 
+import common.GameBoard;
+
 /**
  * GameBoardCanvas: paints the Connect Four board & tokens.
  */
@@ -24,6 +26,33 @@ public class GameBoardCanvas extends JComponent {
         repaint();
     }
 
+    /** Take the stones of players 1 and 2, laid out as in {@link GameBoard}, and repaint. */
+    public void setBoardState(long player1, long player2) {
+        for (int r = 0; r < ROWS; r++) {
+            for (int c = 0; c < COLS; c++) {
+                long bit = 1L << (c * GameBoard.H1 + ROWS - 1 - r);
+                board[r][c] = (player1 & bit) != 0 ? 1 : (player2 & bit) != 0 ? 2 : 0;
+            }
+        }
+        repaint();
+    }
+
+    /** Set one cell and repaint just that cell. */
+    public void setCell(int r, int c, int v) {
+        if (r < 0 || r >= ROWS || c < 0 || c >= COLS) return;
+        board[r][c] = v;
+        int cellW = getWidth() / COLS, cellH = getHeight() / ROWS;
+        repaint(c * cellW, r * cellH, cellW, cellH);
+    }
+
+    public int stoneCount() {
+        int n = 0;
+        for (int[] row : board) {
+            for (int v : row) if (v != 0) n++;
+        }
+        return n;
+    }
+
     private int parseIntSafe(String s) {
         try { return Integer.parseInt(s); }
         catch (Exception e) { return 0; }
@@ -62,4 +62,19 @@ public class GameBoardPanel extends JLayeredPane {
     public void updateBoard(String serialized) {
         canvas.setBoardState(serialized);
     }
+
+    /** Drop one stone in, repainting only its cell. */
+    public void placeStone(int row, int col, int player) {
+        canvas.setCell(row, col, player);
+    }
+
+    /** Number of stones on the board shown. */
+    public int stoneCount() {
+        return canvas.stoneCount();
+    }
+
+    /** Update the board from the stones of players 1 and 2, as in GameBoard. */
+    public void updateBoard(long player1, long player2) {
+        canvas.setBoardState(player1, player2);
+    }
 }
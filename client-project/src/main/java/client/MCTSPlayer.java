@@ -0,0 +1,313 @@
+package client;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import common.GameBoard;
+
+/**
+ * Connect-4 AI using Monte Carlo tree search (UCT).
+ *
+ * Each iteration walks down the tree picking the child with the best UCB1
+ * score, expands the leaf it reaches, plays the game out to the end and
+ * credits the result to every node on the way back. Playouts are random but
+ * never miss an immediate win or leave one to the opponent. Positions are
+ * (stones of the side to move, occupied mask) bitboards, as in
+ * {@link Solver}, and the tree lives in preallocated arrays, so a search
+ * allocates nothing.
+ *
+ * The tree is kept between moves: when the next position is the old root
+ * two plies on, the matching subtree becomes the new root. With more than one
+ * thread every thread grows its own tree from the same root ("root
+ * parallelism") and the visit counts of the root moves are added up at the
+ * end. For a fixed playout count and seed the chosen column is always the
+ * same for a given thread count.
+ */
+public class MCTSPlayer implements AIEngine {
+    /** Default tree size per thread: 2^19 nodes (about 7.5 MB). */
+    public static final int DEFAULT_TREE_NODES = 1 << 19;
+
+    /** UCB1 exploration constant, for results scored 0 (loss) to 1 (win). */
+    private static final double EXPLORATION = Math.sqrt(2);
+
+    /** Columns from the centre outwards; children are created in this order. */
+    private static final int[] CENTER_ORDER = { 3, 2, 4, 1, 5, 0, 6 };
+
+    private static final int CELLS = GameBoard.ROWS * GameBoard.COLS;
+
+    // Outcome of the move into a node
+    private static final byte OPEN = 0;
+    private static final byte WIN  = 1;
+    private static final byte DRAW = 2;
+
+    private final int playouts;
+    private final Tree[] trees;
+    private final ForkJoinPool pool;
+
+    // Per-search state
+    private volatile long    deadline;
+    private long             lastPlayouts;
+
+    /** @param playouts playouts per move for {@link #chooseColumn(GameBoard)} */
+    public MCTSPlayer(int playouts) {
+        this(playouts, 1);
+    }
+
+    /**
+     * @param threads number of trees searched in parallel; 1 searches on the
+     *                caller's thread, more uses the shared ForkJoinPool of that
+     *                size (see {@link SearchPools})
+     */
+    public MCTSPlayer(int playouts, int threads) {
+        this(playouts, threads, DEFAULT_TREE_NODES, 1);
+    }
+
+    /**
+     * @param treeNodes nodes per tree (15 bytes each); once a tree is full
+     *                  its leaves are still played out but no longer expanded
+     * @param seed      seed for the playouts; thread i uses seed + i
+     */
+    public MCTSPlayer(int playouts, int threads, int treeNodes, long seed) {
+        if (playouts < 1)  throw new IllegalArgumentException("playouts must be >= 1");
+        if (threads < 1)   throw new IllegalArgumentException("threads must be >= 1");
+        if (treeNodes < 64) throw new IllegalArgumentException("treeNodes must be >= 64");
+        this.playouts = playouts;
+        this.trees    = new Tree[threads];
+        for (int i = 0; i < threads; i++) trees[i] = new Tree(treeNodes, seed + i);
+        this.pool     = threads > 1 ? SearchPools.get(threads) : null;
+    }
+
+    /** Returns best column [0..6] after the configured number of playouts. */
+    @Override
+    public int chooseColumn(GameBoard board, Cancellation cancel) {
+        deadline = Long.MAX_VALUE;
+        return search(board, (playouts + trees.length - 1) / trees.length, cancel);
+    }
+
+    /** Returns best column [0..6] after playing out for the given time. */
+    @Override
+    public int chooseColumn(GameBoard board, Duration budget) {
+        deadline = System.nanoTime() + budget.toNanos();
+        return search(board, Long.MAX_VALUE, Cancellation.NEVER);
+    }
+
+    /** Playouts run by the last chooseColumn call, over all threads. */
+    public long getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    /** Number of search threads this player uses. */
+    public int getThreads() {
+        return trees.length;
+    }
+
+    private int search(GameBoard board, long iterations, Cancellation cancel) {
+        long pos  = board.stones(board.playerToMove());
+        long mask = board.stones(1) | board.stones(2);
+        if (pool == null) {
+            trees[0].search(pos, mask, iterations, cancel);
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>(trees.length);
+            for (Tree t : trees) {
+                tasks.add(() -> {
+                    t.search(pos, mask, iterations, cancel);
+                    return null;
+                });
+            }
+            pool.invokeAll(tasks);
+        }
+
+        // Most visited root move over all trees; ties go to the more central column
+        long total = 0;
+        int bestCol = -1;
+        long bestVisits = -1;
+        for (Tree t : trees) total += t.lastIterations;
+        for (int c : CENTER_ORDER) {
+            if (!board.isValidMove(c)) continue;
+            long v = 0;
+            for (Tree t : trees) v += t.rootVisits(c);
+            if (v > bestVisits) {
+                bestVisits = v;
+                bestCol    = c;
+            }
+        }
+        lastPlayouts = total;
+        return bestCol;
+    }
+
+    /**
+     * One thread's search tree. Children of a node are created together and
+     * stored next to each other, so a node only needs its first child and
+     * how many there are.
+     */
+    private final class Tree {
+        private final int[]  visits;
+        private final int[]  score;       // half points for the player who moved into the node
+        private final int[]  firstChild;  // -1 until expanded
+        private final byte[] childCount;
+        private final byte[] move;
+        private final byte[] outcome;     // OPEN, or WIN / DRAW if the move into it ended the game
+        private final int[]  path = new int[CELLS + 1];
+        private final SplittableRandom rng;
+
+        private int  nodeCount;
+        private int  root = -1;
+        private long rootPos, rootMask;
+        long         lastIterations;
+
+        Tree(int capacity, long seed) {
+            visits     = new int[capacity];
+            score      = new int[capacity];
+            firstChild = new int[capacity];
+            childCount = new byte[capacity];
+            move       = new byte[capacity];
+            outcome    = new byte[capacity];
+            rng        = new SplittableRandom(seed);
+        }
+
+        void search(long pos, long mask, long iterations, Cancellation cancel) {
+            reroot(pos, mask);
+            long i = 0;
+            while (i < iterations && !cancel.isCancelled()) {
+                iterate();
+                if ((++i & 63) == 0 && System.nanoTime() >= deadline) break;
+            }
+            lastIterations = i;
+        }
+
+        /** Visits of the root move in column col (0 if not expanded yet). */
+        int rootVisits(int col) {
+            for (int k = 0; k < childCount[root]; k++) {
+                int ch = firstChild[root] + k;
+                if (move[ch] == col) return visits[ch];
+            }
+            return 0;
+        }
+
+        /**
+         * Make the position the root, keeping its subtree if it is the old
+         * root or lies up to two plies below it. Nodes outside that subtree
+         * are not reclaimed, so a tree more than three quarters full starts
+         * over instead.
+         */
+        private void reroot(long pos, long mask) {
+            int n = (root < 0 || nodeCount > visits.length / 4 * 3)
+                  ? -1 : find(root, rootPos, rootMask, pos, mask, 2);
+            if (n < 0) {
+                nodeCount = 0;
+                n = newNode(-1, OPEN);
+            }
+            root     = n;
+            rootPos  = pos;
+            rootMask = mask;
+        }
+
+        private int find(int n, long p, long m, long pos, long mask, int plies) {
+            if (p == pos && m == mask) return n;
+            if (plies == 0 || firstChild[n] < 0) return -1;
+            for (int k = 0; k < childCount[n]; k++) {
+                int ch = firstChild[n] + k;
+                long bit = Solver.possible(m) & Solver.columnMask(move[ch]);
+                int found = find(ch, p ^ m, m | bit, pos, mask, plies - 1);
+                if (found >= 0) return found;
+            }
+            return -1;
+        }
+
+        /** Select, expand, play out and back up once. */
+        private void iterate() {
+            int n = root, depth = 0;
+            long p = rootPos, m = rootMask;
+            path[0] = n;
+            int result;  // half points for the player who moved into node n
+            while (true) {
+                if (outcome[n] != OPEN) {
+                    result = outcome[n] == WIN ? 2 : 1;
+                    break;
+                }
+                if (firstChild[n] < 0
+                        && !((visits[n] > 0 || n == root) && expand(n, p, m))) {
+                    result = 2 - playout(p, m);
+                    break;
+                }
+                n = select(n);
+                long bit = Solver.possible(m) & Solver.columnMask(move[n]);
+                p ^= m;
+                m |= bit;
+                path[++depth] = n;
+            }
+            for (int i = depth; i >= 0; i--) {
+                visits[path[i]]++;
+                score[path[i]] += result;
+                result = 2 - result;
+            }
+        }
+
+        /** Child of n with the highest UCB1 score; unvisited children first. */
+        private int select(int n) {
+            int first = firstChild[n], best = first;
+            double logN = Math.log(visits[n]), bestValue = Double.NEGATIVE_INFINITY;
+            for (int ch = first; ch < first + childCount[n]; ch++) {
+                int v = visits[ch];
+                if (v == 0) return ch;
+                double value = score[ch] / (2.0 * v) + EXPLORATION * Math.sqrt(logN / v);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best      = ch;
+                }
+            }
+            return best;
+        }
+
+        /** Create all children of n; false if the tree has no room left. */
+        private boolean expand(int n, long p, long m) {
+            long possible = Solver.possible(m);
+            int count = Long.bitCount(possible);  // one playable cell per open column
+            if (nodeCount + count > visits.length) return false;
+            long win = Solver.winningPositions(p, m) & possible;
+            boolean last = Long.bitCount(m) + 1 == CELLS;
+            firstChild[n] = nodeCount;
+            for (int c : CENTER_ORDER) {
+                long bit = possible & Solver.columnMask(c);
+                if (bit == 0) continue;
+                int ch = newNode(c, (win & bit) != 0 ? WIN : last ? DRAW : OPEN);
+                childCount[n]++;
+                assert ch == firstChild[n] + childCount[n] - 1;
+            }
+            return true;
+        }
+
+        private int newNode(int col, byte result) {
+            int n = nodeCount++;
+            visits[n]     = 0;
+            score[n]      = 0;
+            firstChild[n] = -1;
+            childCount[n] = 0;
+            move[n]       = (byte) col;
+            outcome[n]    = result;
+            return n;
+        }
+
+        /**
+         * Play random moves to the end of the game, except that an immediate
+         * win is always taken and an immediate loss never allowed when it can
+         * be avoided. Returns half points for the side to move at the start.
+         */
+        private int playout(long p, long m) {
+            for (int side = 0; ; side ^= 1) {
+                long possible = Solver.possible(m);
+                if (possible == 0) return 1;
+                if ((Solver.winningPositions(p, m) & possible) != 0) return side == 0 ? 2 : 0;
+                long safe = Solver.nonLosingMoves(p, m);
+                if (safe == 0) return side == 0 ? 0 : 2;
+                for (int k = rng.nextInt(Long.bitCount(safe)); k > 0; k--) safe &= safe - 1;
+                p ^= m;
+                m |= Long.lowestOneBit(safe);
+            }
+        }
+    }
+}
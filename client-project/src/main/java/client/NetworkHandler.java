@@ -2,27 +2,77 @@ package client;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.locks.ReentrantLock;
+
+import common.BinaryProtocol;
 
 /**
  * NetworkHandler: handles socket communication.
+ *
+ * Starts out on text lines. After a login answered with the
+ * {@link BinaryProtocol} version, {@link #enableBinary()} switches both
+ * directions to frames; {@link #readMessage()} and {@link #sendMessage}
+ * keep working with the text commands.
  */
 public class NetworkHandler {
     private Socket socket;
-    private BufferedReader in;
-    private PrintWriter out;
+    private DataInputStream in;
+    private OutputStream out;
+    private volatile boolean binary;
+    private final ReentrantLock writeLock = new ReentrantLock();
 
     public NetworkHandler(String serverIP, int port) throws IOException {
         socket = new Socket(serverIP, port);
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream())), true);
+        socket.setTcpNoDelay(true);
+        // lines are cut here rather than by a Reader, which would read ahead
+        // into the first frames
+        in  = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new BufferedOutputStream(socket.getOutputStream());
     }
 
     public void sendMessage(String msg) {
-        out.println(msg);
+        writeLock.lock();
+        try {
+            out.write(binary
+                ? BinaryProtocol.encode(msg)
+                : (msg + System.lineSeparator()).getBytes(Charset.defaultCharset()));
+            out.flush();
+        } catch (IOException ignored) {
+            // like PrintWriter: the listener finds the connection gone
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     public String readMessage() throws IOException {
-        return in.readLine();
+        if (binary) {
+            ByteBuffer frame = readFrame();
+            return frame == null ? null : BinaryProtocol.toText(frame);
+        }
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) return line.size() == 0 ? null : line.toString(Charset.defaultCharset().name());
+            line.write(b);
+        }
+        String s = line.toString(Charset.defaultCharset().name());
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+
+    /** Next frame body, or null at end of stream; only once binary is on. */
+    public ByteBuffer readFrame() throws IOException {
+        return BinaryProtocol.readFrame(in);
+    }
+
+    /** Switch to frames; call right after reading the login answer that allows it. */
+    public void enableBinary() {
+        binary = true;
+    }
+
+    public boolean isBinary() {
+        return binary;
     }
 
     public void close() {
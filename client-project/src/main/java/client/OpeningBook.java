@@ -0,0 +1,115 @@
+package client;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import common.GameBoard;
+
+/**
+ * Read-only opening book: position key to best move (and, for solved
+ * entries, exact score), looked up by binary search in a memory-mapped file.
+ *
+ * File layout (big-endian):
+ *   int MAGIC, int VERSION, int plies, int count,
+ *   then count longs sorted ascending, each
+ *   key << 12 | exact << 10 | (score - Solver.MIN_SCORE) << 4 | move.
+ * Keys are GameBoard.key() folded with its mirror (the smaller of the two),
+ * so each symmetric pair of positions has one entry.
+ *
+ * The entries stay in the page cache, not on the Java heap.
+ */
+public final class OpeningBook {
+    static final int MAGIC   = 0x43344F42;  // "C4OB"
+    static final int VERSION = 1;
+    static final int HEADER  = 16;
+
+    private final MappedByteBuffer buf;
+    private final int plies, count;
+
+    private OpeningBook(MappedByteBuffer buf) throws IOException {
+        this.buf = buf;
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            throw new IOException("Not an opening book file");
+        }
+        this.plies = buf.getInt(8);
+        this.count = buf.getInt(12);
+        if (HEADER + 8L * count > buf.capacity()) {
+            throw new IOException("Truncated opening book");
+        }
+    }
+
+    /** Map a book file built by {@link OpeningBookBuilder}. */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            buf.order(ByteOrder.BIG_ENDIAN);
+            return new OpeningBook(buf);
+        }
+    }
+
+    /** Like {@link #open}, but returns null if the file is missing or unreadable. */
+    public static OpeningBook openIfPresent(Path file) {
+        if (!Files.isReadable(file)) return null;
+        try {
+            return open(file);
+        } catch (IOException e) {
+            System.err.println("Failed to load opening book " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Positions with fewer stones than this were put in the book. */
+    public int getPlies() {
+        return plies;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Book move for the side to move, or -1 if the position is not in the book. */
+    public int lookupMove(GameBoard board) {
+        long key = board.key();
+        long mirror = GameBoard.mirrorKey(key);
+        long e = find(Math.min(key, mirror));
+        if (e < 0) return -1;
+        int move = (int) (e & 0xF);
+        return mirror < key ? GameBoard.COLS - 1 - move : move;
+    }
+
+    /**
+     * Exact solver score of the position (see {@link Solver}), or
+     * Integer.MIN_VALUE if it is missing or was only searched heuristically.
+     */
+    public int lookupScore(GameBoard board) {
+        long key = board.key();
+        long e = find(Math.min(key, GameBoard.mirrorKey(key)));
+        if (e < 0 || (e & (1L << 10)) == 0) return Integer.MIN_VALUE;
+        return (int) ((e >>> 4) & 0x3F) + Solver.MIN_SCORE;
+    }
+
+    private long find(long key) {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long e = buf.getLong(HEADER + 8 * mid);
+            long k = e >>> 12;
+            if (k < key)      lo = mid + 1;
+            else if (k > key) hi = mid - 1;
+            else              return e;
+        }
+        return -1;
+    }
+
+    static long pack(long key, int move, boolean exact, int score) {
+        return (key << 12)
+             | (exact ? 1L << 10 : 0)
+             | ((long) (exact ? score - Solver.MIN_SCORE : 0) << 4)
+             | move;
+    }
+}
@@ -0,0 +1,113 @@
+package client;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import common.GameBoard;
+
+/**
+ * Offline tool that builds an {@link OpeningBook}.
+ *
+ * Visits every position with fewer than N stones that is still undecided,
+ * folds mirror images together, works out a move for each and writes the
+ * sorted book file.
+ *
+ * Usage: OpeningBookBuilder &lt;out-file&gt; &lt;plies&gt; [solve | depth=&lt;d&gt;]
+ *   solve    exact solver (slow for very early positions)
+ *   depth=d  heuristic AIPlayer search to depth d (default 12)
+ */
+public class OpeningBookBuilder {
+    private final int plies;
+    private final boolean solve;
+    private final int depth;
+    private final Map<Long, Long> entries = new HashMap<>();
+    private final Solver   solver;
+    private final AIPlayer[] searchers;
+
+    public OpeningBookBuilder(int plies, boolean solve, int depth) {
+        this.plies  = plies;
+        this.solve  = solve;
+        this.depth  = depth;
+        this.solver = solve ? new Solver() : null;
+        this.searchers = solve ? null
+            : new AIPlayer[] { new AIPlayer(1, depth), new AIPlayer(2, depth) };
+    }
+
+    /** Walk the opening tree and fill in one entry per canonical position. */
+    public void build() {
+        visit(new GameBoard());
+    }
+
+    private void visit(GameBoard b) {
+        if (b.getMoveCount() >= plies) return;
+        long key = b.key();
+        long mirror = GameBoard.mirrorKey(key);
+        long canon = Math.min(key, mirror);
+        if (entries.containsKey(canon)) return;
+
+        int move, score = 0;
+        if (solve) {
+            move  = solver.bestMove(b);
+            score = solver.solve(b);
+        } else {
+            move = searchers[b.playerToMove() - 1].chooseColumn(b);
+        }
+        if (mirror < key) move = GameBoard.COLS - 1 - move;
+        entries.put(canon, OpeningBook.pack(canon, move, solve, score));
+        if (entries.size() % 1000 == 0) {
+            System.out.println(entries.size() + " positions");
+        }
+
+        for (int c = 0; c < GameBoard.COLS; c++) {
+            if (!b.isValidMove(c)) continue;
+            int player = b.playerToMove();
+            b.play(c);
+            if (!b.checkWin(player)) visit(b);
+            b.undo();
+        }
+    }
+
+    /** Write the book file: header, then entries in ascending key order. */
+    public void write(Path out) throws IOException {
+        long[] sorted = new long[entries.size()];
+        int i = 0;
+        for (long e : entries.values()) sorted[i++] = e;
+        Arrays.sort(sorted);
+        try (DataOutputStream os = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(out)))) {
+            os.writeInt(OpeningBook.MAGIC);
+            os.writeInt(OpeningBook.VERSION);
+            os.writeInt(plies);
+            os.writeInt(sorted.length);
+            for (long e : sorted) os.writeLong(e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: OpeningBookBuilder <out-file> <plies> [solve | depth=<d>]");
+            System.exit(1);
+        }
+        Path out  = Paths.get(args[0]);
+        int plies = Integer.parseInt(args[1]);
+        boolean solve = false;
+        int depth = 12;
+        if (args.length > 2) {
+            if ("solve".equals(args[2])) solve = true;
+            else if (args[2].startsWith("depth=")) depth = Integer.parseInt(args[2].substring(6));
+        }
+        long t0 = System.currentTimeMillis();
+        OpeningBookBuilder builder = new OpeningBookBuilder(plies, solve, depth);
+        builder.build();
+        builder.write(out);
+        System.out.println("Wrote " + builder.entries.size() + " positions to " + out
+            + " in " + (System.currentTimeMillis() - t0) / 1000 + " s");
+    }
+}
@@ -0,0 +1,68 @@
+package client;
+
+import java.time.Duration;
+
+import common.GameBoard;
+
+/**
+ * Hardest single-player level: plays perfectly once the position is small
+ * enough to solve interactively, and uses the heuristic search before that.
+ */
+public class PerfectPlayer extends AIPlayer {
+    /**
+     * From this many stones on, every move comes from the exact solver.
+     * Earlier, a cold solve can take seconds on the client's only AI thread;
+     * the opening book, if set, covers the start instead.
+     */
+    public static final int SOLVE_FROM_MOVE = 12;
+
+    /** Heuristic depth for the opening, before the solver takes over. */
+    private static final int OPENING_DEPTH = 10;
+
+    private final Solver solver;
+
+    public PerfectPlayer(int aiPlayer) {
+        this(aiPlayer, new Solver());
+    }
+
+    public PerfectPlayer(int aiPlayer, Solver solver) {
+        super(aiPlayer, OPENING_DEPTH);
+        this.solver = solver;
+    }
+
+    @Override
+    public int chooseColumn(GameBoard board, Cancellation cancel) {
+        int pondered = ponderedMove(board);
+        if (pondered >= 0) return pondered;
+        if (board.getMoveCount() >= SOLVE_FROM_MOVE) {
+            return solve(board, cancel);
+        }
+        return super.chooseColumn(board, cancel);
+    }
+
+    /** Solved positions ignore the budget: the exact answer is always wanted. */
+    @Override
+    public int chooseColumn(GameBoard board, Duration budget) {
+        if (board.getMoveCount() >= SOLVE_FROM_MOVE) {
+            return solve(board, Cancellation.NEVER);
+        }
+        return super.chooseColumn(board, budget);
+    }
+
+    /**
+     * Solver move. Its statistics hold the node count and time, with the
+     * remaining plies as the depth; the solver has no cutoff or table
+     * counters of its own.
+     */
+    private int solve(GameBoard board, Cancellation cancel) {
+        long start = System.nanoTime(), before = solver.getNodeCount();
+        int col = solver.bestMove(board, cancel);
+        long nodes = solver.getNodeCount() - before, nanos = System.nanoTime() - start;
+        SearchStats stats = new SearchStats();
+        stats.addCounts(nodes, 0, 0, 0, new long[0]);
+        stats.addIteration(GameBoard.ROWS * GameBoard.COLS - board.getMoveCount(), nanos, nodes);
+        stats.setResult(new int[] { col }, 0, nanos);
+        setLastStats(stats);
+        return col;
+    }
+}
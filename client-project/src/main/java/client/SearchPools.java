@@ -0,0 +1,25 @@
+package client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ForkJoinPools for the parallel AI engines, one per thread count and
+ * shared by every engine that asks for it. Engines are created and dropped
+ * freely (a new one each time the player picks a difficulty), so none of
+ * them owns a pool it would have to shut down. Pool threads are daemons and
+ * end on their own once idle.
+ */
+final class SearchPools {
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private SearchPools() {
+    }
+
+    /** The shared pool with the given parallelism (at least 2). */
+    static ForkJoinPool get(int threads) {
+        if (threads < 2) throw new IllegalArgumentException("threads must be >= 2");
+        return POOLS.computeIfAbsent(threads, ForkJoinPool::new);
+    }
+}
@@ -0,0 +1,137 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import common.GameBoard;
+
+/**
+ * SearchStats: what one AIPlayer search did.
+ *
+ * Counters are kept per search thread as plain longs and added in here once
+ * the search is over, so collecting them costs a few increments per node and
+ * stays on in every build. A finished SearchStats is never changed again and
+ * may be read from any thread.
+ */
+public class SearchStats {
+    /** One completed iteration of the search. */
+    public static final class Iteration {
+        private final int  depth;
+        private final long nanos;
+        private final long nodes;
+
+        Iteration(int depth, long nanos, long nodes) {
+            this.depth = depth;
+            this.nanos = nanos;
+            this.nodes = nodes;
+        }
+
+        public int  getDepth() { return depth; }
+        public long getNanos() { return nanos; }
+        public long getNodes() { return nodes; }
+    }
+
+    private long nodes;
+    private long leaves;
+    private long ttProbes;
+    private long ttHits;
+    private final long[] cutoffs = new long[GameBoard.COLS];
+    private final List<Iteration> iterations = new ArrayList<>();
+    private long  elapsedNanos;
+    private int[] pv = new int[0];
+    private int   score;
+
+    void addCounts(long nodes, long leaves, long ttProbes, long ttHits, long[] cutoffs) {
+        this.nodes    += nodes;
+        this.leaves   += leaves;
+        this.ttProbes += ttProbes;
+        this.ttHits   += ttHits;
+        for (int i = 0; i < cutoffs.length; i++) this.cutoffs[i] += cutoffs[i];
+    }
+
+    void addIteration(int depth, long nanos, long nodes) {
+        iterations.add(new Iteration(depth, nanos, nodes));
+    }
+
+    void setResult(int[] pv, int score, long elapsedNanos) {
+        this.pv = pv;
+        this.score = score;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /** Positions visited, leaves and the root included. */
+    public long getNodes() { return nodes; }
+
+    /** Positions scored by the evaluation function. */
+    public long getLeaves() { return leaves; }
+
+    public long getTtProbes() { return ttProbes; }
+
+    /** Probes that found an entry for the position, usable or not. */
+    public long getTtHits() { return ttHits; }
+
+    public double getTtHitRate() {
+        return ttProbes == 0 ? 0 : (double) ttHits / ttProbes;
+    }
+
+    /** Beta cutoffs caused by the i-th move tried at a node (0 = first). */
+    public long getCutoffs(int moveIndex) { return cutoffs[moveIndex]; }
+
+    public long getTotalCutoffs() {
+        long n = 0;
+        for (long c : cutoffs) n += c;
+        return n;
+    }
+
+    /** Share of cutoffs found by the first move tried: how good the move ordering is. */
+    public double getFirstMoveCutoffRate() {
+        long total = getTotalCutoffs();
+        return total == 0 ? 0 : (double) cutoffs[0] / total;
+    }
+
+    /** Completed iterations, shallowest first. */
+    public List<Iteration> getIterations() {
+        return Collections.unmodifiableList(iterations);
+    }
+
+    /** Depth of the deepest completed iteration, or 0 if none completed. */
+    public int getDepth() {
+        return iterations.isEmpty() ? 0 : iterations.get(iterations.size() - 1).getDepth();
+    }
+
+    /**
+     * Effective branching factor: growth in nodes from the second-deepest to
+     * the deepest iteration, or the depth-th root of the node count when
+     * there was only one.
+     */
+    public double getBranchingFactor() {
+        int n = iterations.size();
+        if (n >= 2 && iterations.get(n - 2).getNodes() > 0) {
+            return (double) iterations.get(n - 1).getNodes() / iterations.get(n - 2).getNodes();
+        }
+        int depth = getDepth();
+        return depth == 0 ? 0 : Math.pow(nodes, 1.0 / depth);
+    }
+
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    public double getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos;
+    }
+
+    /** Best line found, as columns, starting with the move chosen. */
+    public int[] getPrincipalVariation() { return pv.clone(); }
+
+    /** Score of the chosen move, from the searching player's side. */
+    public int getScore() { return score; }
+
+    /** One-line summary, e.g. for a debug overlay. */
+    @Override
+    public String toString() {
+        return String.format("depth %d | %,d nodes | %,.0f n/s | ebf %.2f | TT %.0f%% | 1st-move cutoffs %.0f%% | pv %s",
+            getDepth(), nodes, getNodesPerSecond(), getBranchingFactor(),
+            100 * getTtHitRate(), 100 * getFirstMoveCutoffRate(), Arrays.toString(pv));
+    }
+}
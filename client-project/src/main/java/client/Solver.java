@@ -0,0 +1,288 @@
+package client;
+
+import common.GameBoard;
+
+/**
+ * Strong solver: returns the exact game-theoretic value of a 6x7 position.
+ *
+ * Scores follow the usual convention: 0 is a draw, a positive score means the
+ * side to move wins, and the magnitude is how early (22 minus the number of
+ * stones that side will have played when the win lands). The search is
+ * negamax with alpha-beta, narrowed to null windows by bisecting the possible
+ * score range. Positions are plain (stones of the side to move, occupied mask)
+ * bitboards passed by value, so the search allocates nothing.
+ */
+public class Solver {
+    private static final int WIDTH  = GameBoard.COLS;
+    private static final int HEIGHT = GameBoard.ROWS;
+    private static final int CELLS  = WIDTH * HEIGHT;
+    private static final int H1     = HEIGHT + 1;
+
+    public static final int MIN_SCORE = -CELLS / 2 + 3;
+    public static final int MAX_SCORE = (CELLS + 1) / 2 - 3;
+
+    /** Default table size: the first prime above 2^23 (about 40 MB). */
+    public static final int DEFAULT_TABLE_SIZE = 8388617;
+
+    private static final long BOTTOM_MASK = bottomMask();
+    private static final long BOARD_MASK  = BOTTOM_MASK * ((1L << HEIGHT) - 1);
+    private static final int[] CENTER_ORDER = { 3, 2, 4, 1, 5, 0, 6 };
+    private static final int UPPER_LIMIT  = MAX_SCORE - MIN_SCORE + 1;
+
+    // Transposition table: low 32 bits of the key, and one bound on the score
+    // (0 means empty). Upper bounds are stored as score - MIN_SCORE + 1, in
+    // 1..UPPER_LIMIT; lower bounds above that. The table size is odd and
+    // above 2^17, so index and partial key together identify the 49-bit
+    // position key exactly.
+    private final int[]  keys;
+    private final byte[] values;
+
+    // Move ordering buffers, one row per stone count
+    private final long[][] moveBuf  = new long[CELLS][WIDTH];
+    private final int[][]  scoreBuf = new int[CELLS][WIDTH];
+
+    private long nodes;
+    /** Cancellation of the running search, set when it starts. */
+    private Cancellation cancel = Cancellation.NEVER;
+
+    public Solver() {
+        this(DEFAULT_TABLE_SIZE);
+    }
+
+    /** @param tableSize number of table entries (5 bytes each); should be prime */
+    public Solver(int tableSize) {
+        keys   = new int[tableSize];
+        values = new byte[tableSize];
+    }
+
+    /** Exact score of the position for the side to move. */
+    public int solve(GameBoard board) {
+        cancel = Cancellation.NEVER;
+        int player = board.playerToMove();
+        long mask = board.stones(1) | board.stones(2);
+        return solve(board.stones(player), mask, board.getMoveCount());
+    }
+
+    /**
+     * Score of every column for the side to move, or Integer.MIN_VALUE for
+     * columns that are full.
+     */
+    public int[] analyze(GameBoard board) {
+        cancel = Cancellation.NEVER;
+        int player = board.playerToMove();
+        long mask = board.stones(1) | board.stones(2);
+        long pos  = board.stones(player);
+        int moves = board.getMoveCount();
+        int[] scores = new int[WIDTH];
+        for (int c = 0; c < WIDTH; c++) {
+            long move = (mask + bottomMaskCol(c)) & columnMask(c);
+            if (move == 0) {
+                scores[c] = Integer.MIN_VALUE;
+            } else if ((winningPositions(pos, mask) & move) != 0) {
+                scores[c] = (CELLS + 1 - moves) / 2;
+            } else {
+                scores[c] = -solve(pos ^ mask, mask | move, moves + 1);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Best column for the side to move; ties go to the more central column.
+     * Solves the position once, then uses a null-window test per column to
+     * find the first move that keeps that score, which is far cheaper than
+     * solving every column exactly.
+     */
+    public int bestMove(GameBoard board) {
+        return bestMove(board, Cancellation.NEVER);
+    }
+
+    /**
+     * As {@link #bestMove(GameBoard)}, but returns early once {@code cancel}
+     * is cancelled. The answer is then meaningless; nothing learned after
+     * the cancel is written to the table.
+     */
+    public int bestMove(GameBoard board, Cancellation cancel) {
+        this.cancel = cancel;
+        int player = board.playerToMove();
+        long mask = board.stones(1) | board.stones(2);
+        long pos  = board.stones(player);
+        int moves = board.getMoveCount();
+        long possible = possible(mask);
+        if (possible == 0) return -1;
+
+        long win = winningPositions(pos, mask) & possible;
+        long safe = nonLosingMoves(pos, mask);
+        if (win != 0) safe = win;
+        if (safe == 0) {
+            // Every move loses at once; play the most central one
+            for (int c : CENTER_ORDER) {
+                if ((possible & columnMask(c)) != 0) return c;
+            }
+        }
+        int target = solve(pos, mask, moves);
+        int fallback = -1;
+        for (int c : CENTER_ORDER) {
+            long move = safe & columnMask(c);
+            if (move == 0) continue;
+            if (fallback < 0) fallback = c;
+            if ((win & move) != 0) return c;
+            // Child value <= -target means this move scores at least target
+            int r = negamax(pos ^ mask, mask | move, moves + 1, -target, -target + 1);
+            if (-r >= target) return c;
+        }
+        return fallback;
+    }
+
+    /** Positions searched since this solver was created. */
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    /** Forget all stored positions. */
+    public void reset() {
+        java.util.Arrays.fill(keys, 0);
+        java.util.Arrays.fill(values, (byte) 0);
+    }
+
+    private int solve(long pos, long mask, int moves) {
+        if (moves == CELLS) return 0;
+        if ((winningPositions(pos, mask) & possible(mask)) != 0) {
+            return (CELLS + 1 - moves) / 2;
+        }
+        int min = -(CELLS - moves) / 2;
+        int max = (CELLS + 1 - moves) / 2;
+        // Null-window bisection, biased towards 0 where most answers lie
+        while (min < max) {
+            int med = min + (max - min) / 2;
+            if (med <= 0 && min / 2 < med)      med = min / 2;
+            else if (med >= 0 && max / 2 > med) med = max / 2;
+            int r = negamax(pos, mask, moves, med, med + 1);
+            if (r <= med) max = r;
+            else          min = r;
+        }
+        return min;
+    }
+
+    /**
+     * Negamax on a position where the side to move cannot win immediately.
+     * Returns the exact score if it lies in (alpha, beta), otherwise a bound.
+     */
+    private int negamax(long pos, long mask, int moves, int alpha, int beta) {
+        nodes++;
+        if (cancel.isCancelled()) return 0;
+        long next = nonLosingMoves(pos, mask);
+        if (next == 0) return -(CELLS - moves) / 2;   // opponent wins next move
+        if (moves >= CELLS - 2) return 0;             // no one can win any more
+
+        int min = -(CELLS - 2 - moves) / 2;
+        if (alpha < min) {
+            alpha = min;
+            if (alpha >= beta) return alpha;
+        }
+        int max = (CELLS - 1 - moves) / 2;
+        if (beta > max) {
+            beta = max;
+            if (alpha >= beta) return beta;
+        }
+        long key = pos + mask;
+        int slot = (int) (key % keys.length);
+        int val  = (keys[slot] == (int) key) ? values[slot] : 0;
+        if (val > UPPER_LIMIT) {
+            int lower = val + 2 * MIN_SCORE - MAX_SCORE - 2;
+            if (alpha < lower) {
+                alpha = lower;
+                if (alpha >= beta) return alpha;
+            }
+        } else if (val != 0) {
+            int upper = val + MIN_SCORE - 1;
+            if (beta > upper) {
+                beta = upper;
+                if (alpha >= beta) return beta;
+            }
+        }
+
+        // Order moves by how many new winning cells they create
+        long[] order  = moveBuf[moves];
+        int[]  scores = scoreBuf[moves];
+        int n = 0;
+        for (int c : CENTER_ORDER) {
+            long move = next & columnMask(c);
+            if (move == 0) continue;
+            int score = Long.bitCount(winningPositions(pos | move, mask));
+            int j = n++;
+            while (j > 0 && scores[j - 1] < score) {
+                order[j]  = order[j - 1];
+                scores[j] = scores[j - 1];
+                j--;
+            }
+            order[j]  = move;
+            scores[j] = score;
+        }
+
+        for (int i = 0; i < n; i++) {
+            int score = -negamax(pos ^ mask, mask | order[i], moves + 1, -beta, -alpha);
+            if (cancel.isCancelled()) return 0;
+            if (score >= beta) {
+                keys[slot]   = (int) key;
+                values[slot] = (byte) (score + MAX_SCORE - 2 * MIN_SCORE + 2);
+                return score;
+            }
+            if (score > alpha) alpha = score;
+        }
+
+        keys[slot]   = (int) key;
+        values[slot] = (byte) (alpha - MIN_SCORE + 1);
+        return alpha;
+    }
+
+    /** Playable cells: the lowest empty cell of each column. */
+    static long possible(long mask) {
+        return (mask + BOTTOM_MASK) & BOARD_MASK;
+    }
+
+    /**
+     * Playable cells that do not hand the opponent an immediate win. If the
+     * opponent threatens two cells at once every move loses and this is 0.
+     */
+    static long nonLosingMoves(long pos, long mask) {
+        long possible = possible(mask);
+        long oppWin   = winningPositions(pos ^ mask, mask);
+        long forced   = possible & oppWin;
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0) return 0;
+            possible = forced;
+        }
+        return possible & ~(oppWin >>> 1);
+    }
+
+    /** Empty cells (playable or not) that would complete four for `pos`. */
+    static long winningPositions(long pos, long mask) {
+        // vertical
+        long r = (pos << 1) & (pos << 2) & (pos << 3);
+        for (int d = HEIGHT; d <= HEIGHT + 2; d++) {
+            // horizontal (d = H1) and the two diagonals
+            long p = (pos << d) & (pos << (2 * d));
+            r |= p & (pos << (3 * d));
+            r |= p & (pos >>> d);
+            p = (pos >>> d) & (pos >>> (2 * d));
+            r |= p & (pos << d);
+            r |= p & (pos >>> (3 * d));
+        }
+        return r & (BOARD_MASK ^ mask);
+    }
+
+    private static long bottomMaskCol(int col) {
+        return 1L << (col * H1);
+    }
+
+    static long columnMask(int col) {
+        return ((1L << HEIGHT) - 1) << (col * H1);
+    }
+
+    private static long bottomMask() {
+        long m = 0;
+        for (int c = 0; c < WIDTH; c++) m |= bottomMaskCol(c);
+        return m;
+    }
+}
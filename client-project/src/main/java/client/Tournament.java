@@ -0,0 +1,281 @@
+package client;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import common.GameBoard;
+
+/**
+ * Headless self-play tool: plays two engine configurations against each
+ * other and reports how the first one scored.
+ *
+ * Games come in pairs. Each pair starts from the same random opening, with
+ * the engines taking turns to move first. Games run in parallel, one per
+ * worker thread, and every game builds its own engines. Openings and
+ * Monte Carlo seeds come from the tournament seed, so with fixed-work
+ * engines (depth= or playouts=) a run can be repeated exactly; time budgets
+ * depend on machine load and cannot be. The report gives engine A's score
+ * with a 95% interval and Elo estimate, and for each engine the average
+ * time per move and nodes per second (playouts per second for MCTSPlayer).
+ *
+ * Usage: Tournament &lt;engine-A&gt; &lt;engine-B&gt; [games=N] [threads=T] [seed=S] [plies=P]
+ *   engine    ab[:depth=d][,time=ms][,threads=t]     alpha-beta AIPlayer (depth 8)
+ *             mcts[:playouts=n][,time=ms][,threads=t] MCTSPlayer (100000 playouts)
+ *             perfect                                 PerfectPlayer
+ *   games     number of games, rounded up to even (default 100)
+ *   threads   games played at once (default: all cores)
+ *   seed      seed for openings and playouts (default 1)
+ *   plies     random moves in each opening (default 4)
+ */
+public class Tournament {
+    /** One engine configuration, parsed from the command line. */
+    static final class EngineSpec {
+        final String   text;
+        final String   type;
+        final int      depth;
+        final int      playouts;
+        final Duration budget;   // null: fixed depth or playout count
+        final int      threads;
+
+        private EngineSpec(String text, String type, int depth, int playouts,
+                           Duration budget, int threads) {
+            this.text     = text;
+            this.type     = type;
+            this.depth    = depth;
+            this.playouts = playouts;
+            this.budget   = budget;
+            this.threads  = threads;
+        }
+
+        static EngineSpec parse(String text) {
+            String[] parts = text.split(":", 2);
+            String type = parts[0];
+            if (!type.equals("ab") && !type.equals("mcts") && !type.equals("perfect")) {
+                throw new IllegalArgumentException("Unknown engine type: " + type);
+            }
+            int depth = 8, playouts = 100_000, threads = 1;
+            Duration budget = null;
+            if (parts.length > 1) {
+                for (String opt : parts[1].split(",")) {
+                    String[] kv = opt.split("=", 2);
+                    if (kv.length != 2) throw new IllegalArgumentException("Bad option: " + opt);
+                    String v = kv[1].endsWith("ms") ? kv[1].substring(0, kv[1].length() - 2) : kv[1];
+                    switch (kv[0]) {
+                        case "depth":    depth    = Integer.parseInt(v); break;
+                        case "playouts": playouts = Integer.parseInt(v); break;
+                        case "threads":  threads  = Integer.parseInt(v); break;
+                        case "time":     budget   = Duration.ofMillis(Long.parseLong(v)); break;
+                        default: throw new IllegalArgumentException("Unknown option: " + kv[0]);
+                    }
+                }
+            }
+            return new EngineSpec(text, type, depth, playouts, budget, threads);
+        }
+
+        /** A fresh engine playing {@code side} (1 or 2). */
+        AIEngine create(int side, long seed) {
+            switch (type) {
+                case "perfect": return new PerfectPlayer(side);
+                case "mcts":    return new MCTSPlayer(playouts, threads, MCTSPlayer.DEFAULT_TREE_NODES, seed);
+                default:        return new AIPlayer(side, depth, AIPlayer.DEFAULT_TT_ENTRIES, threads);
+            }
+        }
+
+        int chooseColumn(AIEngine engine, GameBoard board) {
+            return budget == null ? engine.chooseColumn(board) : engine.chooseColumn(board, budget);
+        }
+    }
+
+    /** Per-engine totals over a game or a whole run. */
+    static final class Totals {
+        long moves, nanos, nodes, nodeNanos;
+
+        void add(Totals o) {
+            moves += o.moves;
+            nanos += o.nanos;
+            nodes += o.nodes;
+            nodeNanos += o.nodeNanos;
+        }
+    }
+
+    /** Outcome of one game: winner 0 (engine A), 1 (engine B) or -1 for a draw. */
+    static final class GameResult {
+        int winner = -1;
+        final Totals[] totals = { new Totals(), new Totals() };
+    }
+
+    private final EngineSpec[] engines;
+    private final int  games, threads, plies;
+    private final long seed;
+
+    public Tournament(EngineSpec a, EngineSpec b, int games, int threads, long seed, int plies) {
+        this.engines = new EngineSpec[] { a, b };
+        this.games   = (games + 1) / 2 * 2;
+        this.threads = threads;
+        this.seed    = seed;
+        this.plies   = plies;
+    }
+
+    /** Play every game and return the results in game order. */
+    public List<GameResult> run() throws InterruptedException, ExecutionException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<GameResult>> futures = new ArrayList<>(games);
+            for (int g = 0; g < games; g++) {
+                int game = g;
+                futures.add(workers.submit(() -> play(game)));
+            }
+            List<GameResult> results = new ArrayList<>(games);
+            for (Future<GameResult> f : futures) results.add(f.get());
+            return results;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /** Game g: opening g / 2; engine A moves first in even games. */
+    private GameResult play(int g) {
+        GameBoard board = opening(g / 2);
+        int first = g % 2;             // engine index of the side to move now
+        AIEngine[] side = new AIEngine[2];
+        for (int e = 0; e < 2; e++) {
+            int player = (e == first) ? board.playerToMove() : 3 - board.playerToMove();
+            side[e] = engines[e].create(player, seed * 1_000_003L + g * 2L + e);
+        }
+        GameResult result = new GameResult();
+        for (int e = first; ; e ^= 1) {
+            int player = board.playerToMove();
+            long t0 = System.nanoTime();
+            int col = engines[e].chooseColumn(side[e], board);
+            long nanos = System.nanoTime() - t0;
+            Totals t = result.totals[e];
+            t.moves++;
+            t.nanos += nanos;
+            long nodes = nodes(side[e]);
+            if (nodes >= 0) {
+                t.nodes += nodes;
+                t.nodeNanos += nanos;
+            }
+            board.play(col);
+            if (board.checkWin(player)) {
+                result.winner = e;
+                return result;
+            }
+            if (board.isFull()) return result;
+        }
+    }
+
+    /** Nodes (or playouts) behind the engine's last move, or -1 if it cannot say. */
+    private static long nodes(AIEngine engine) {
+        if (engine instanceof MCTSPlayer) return ((MCTSPlayer) engine).getLastPlayouts();
+        if (engine instanceof AIPlayer) {
+            SearchStats s = ((AIPlayer) engine).getLastStats();
+            return s == null ? -1 : s.getNodes();
+        }
+        return -1;
+    }
+
+    /**
+     * Opening number i: random moves, none of which ends the game, ending in
+     * a position where the side to move cannot win at once.
+     */
+    GameBoard opening(int i) {
+        SplittableRandom rnd = new SplittableRandom(seed ^ (i * 0x9E3779B97F4A7C15L));
+        while (true) {
+            GameBoard b = new GameBoard();
+            boolean ok = true;
+            for (int p = 0; p < plies && ok; p++) {
+                int col = rnd.nextInt(GameBoard.COLS);
+                int player = b.playerToMove();
+                ok = b.isValidMove(col) && b.play(col, player) == GameBoard.Result.CONTINUE;
+            }
+            if (ok && !hasImmediateWin(b)) return b;
+        }
+    }
+
+    private static boolean hasImmediateWin(GameBoard b) {
+        int player = b.playerToMove();
+        for (int c = 0; c < GameBoard.COLS; c++) {
+            if (!b.isValidMove(c)) continue;
+            b.play(c);
+            boolean win = b.checkWin(player);
+            b.undo();
+            if (win) return true;
+        }
+        return false;
+    }
+
+    /** Print the score of engine A with a 95% interval, and per-engine speed. */
+    void report(List<GameResult> results) {
+        int n = results.size(), wins = 0, draws = 0, losses = 0;
+        Totals[] totals = { new Totals(), new Totals() };
+        for (GameResult r : results) {
+            if (r.winner == 0) wins++;
+            else if (r.winner == 1) losses++;
+            else draws++;
+            totals[0].add(r.totals[0]);
+            totals[1].add(r.totals[1]);
+        }
+        double mean = (wins + 0.5 * draws) / n;
+        double var = (wins * sq(1 - mean) + draws * sq(0.5 - mean) + losses * sq(mean)) / Math.max(1, n - 1);
+        double margin = 1.96 * Math.sqrt(var / n);
+
+        System.out.println("A: " + engines[0].text + "   B: " + engines[1].text);
+        System.out.println("games " + n + " (" + n / 2 + " openings x " + plies
+            + " plies, seed " + seed + ", " + threads + " threads)");
+        System.out.printf("A wins %d, draws %d, losses %d%n", wins, draws, losses);
+        System.out.printf("score %.3f +- %.3f (95%%)   elo %+.0f [%+.0f, %+.0f]%n",
+            mean, margin, elo(mean), elo(mean - margin), elo(mean + margin));
+        System.out.printf("%-28s %8s %12s %14s%n", "engine", "moves", "ms/move", "nodes/s");
+        for (int e = 0; e < 2; e++) {
+            Totals t = totals[e];
+            System.out.printf("%-28s %8d %12.2f %14s%n",
+                (e == 0 ? "A " : "B ") + engines[e].text, t.moves,
+                t.moves == 0 ? 0 : t.nanos / 1e6 / t.moves,
+                t.nodeNanos == 0 ? "-" : String.format("%,.0f", t.nodes * 1e9 / t.nodeNanos));
+        }
+    }
+
+    private static double sq(double x) {
+        return x * x;
+    }
+
+    /** Elo difference for an expected score, clamped away from 0 and 1. */
+    private static double elo(double score) {
+        double s = Math.min(Math.max(score, 1e-3), 1 - 1e-3);
+        return -400 * Math.log10(1 / s - 1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: Tournament <engine-A> <engine-B> [games=N] [threads=T] [seed=S] [plies=P]");
+            System.exit(1);
+        }
+        EngineSpec a = EngineSpec.parse(args[0]);
+        EngineSpec b = EngineSpec.parse(args[1]);
+        int games = 100, threads = Runtime.getRuntime().availableProcessors(), plies = 4;
+        long seed = 1;
+        for (int i = 2; i < args.length; i++) {
+            String[] kv = args[i].split("=", 2);
+            switch (kv[0]) {
+                case "games":   games   = Integer.parseInt(kv[1]); break;
+                case "threads": threads = Integer.parseInt(kv[1]); break;
+                case "seed":    seed    = Long.parseLong(kv[1]);   break;
+                case "plies":   plies   = Integer.parseInt(kv[1]); break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(1);
+            }
+        }
+        long t0 = System.currentTimeMillis();
+        Tournament t = new Tournament(a, b, games, threads, seed, plies);
+        t.report(t.run());
+        System.out.println("Finished in " + (System.currentTimeMillis() - t0) / 1000 + " s");
+    }
+}
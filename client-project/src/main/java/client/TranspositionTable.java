@@ -0,0 +1,91 @@
+package client;
+
+/**
+ * Fixed-size transposition table used by AIPlayer.
+ *
+ * Entries live in two parallel long arrays. Slots are paired into buckets of
+ * two: the first slot keeps the deepest result of the current search, the
+ * second always takes whatever the first refused. Each key is stored XOR-ed
+ * with its data word, so a torn read from a concurrent writer simply shows up
+ * as a miss.
+ */
+class TranspositionTable {
+    static final int EXACT = 0;
+    static final int LOWER = 1;
+    static final int UPPER = 2;
+
+    // Packed data word: value | depth | bound | move + 1 | generation | valid
+    private static final int  DEPTH_SHIFT = 32;
+    private static final int  BOUND_SHIFT = 40;
+    private static final int  MOVE_SHIFT  = 42;
+    private static final int  GEN_SHIFT   = 46;
+    private static final long VALID       = 1L << 63;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int    indexShift;
+    private int          generation;
+
+    /** Create a table with room for {@code entries} positions (rounded down to a power of two). */
+    TranspositionTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(entries, 2));
+        keys = new long[size];
+        data = new long[size];
+        indexShift = 64 - Integer.numberOfTrailingZeros(size);
+    }
+
+    /** Number of entries the table can hold. */
+    int capacity() {
+        return keys.length;
+    }
+
+    /** Start a new search; entries from older searches become replaceable. */
+    void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /** Forget everything. */
+    void clear() {
+        java.util.Arrays.fill(keys, 0L);
+        java.util.Arrays.fill(data, 0L);
+    }
+
+    /** Returns the packed entry for key, or 0 if the table has none. */
+    long probe(long key) {
+        int i = bucket(key);
+        long d = data[i];
+        if (d != 0 && (keys[i] ^ d) == key) return d;
+        d = data[i + 1];
+        if (d != 0 && (keys[i + 1] ^ d) == key) return d;
+        return 0;
+    }
+
+    void store(long key, int value, int depth, int bound, int move) {
+        long d = (value & 0xFFFFFFFFL)
+               | ((long) depth << DEPTH_SHIFT)
+               | ((long) bound << BOUND_SHIFT)
+               | ((long) (move + 1) << MOVE_SHIFT)
+               | ((long) generation << GEN_SHIFT)
+               | VALID;
+        int i = bucket(key);
+        long old = data[i];
+        boolean sameKey = old != 0 && (keys[i] ^ old) == key;
+        if (!sameKey && old != 0
+                && generation(old) == generation && depth(old) > depth) {
+            i++;
+        }
+        data[i] = d;
+        keys[i] = key ^ d;
+    }
+
+    static int value(long e)      { return (int) e; }
+    static int depth(long e)      { return (int) (e >>> DEPTH_SHIFT) & 0xFF; }
+    static int bound(long e)      { return (int) (e >>> BOUND_SHIFT) & 0x3; }
+    /** Best move stored with the entry, or -1 if none. */
+    static int move(long e)       { return ((int) (e >>> MOVE_SHIFT) & 0xF) - 1; }
+    static int generation(long e) { return (int) (e >>> GEN_SHIFT) & 0xFF; }
+
+    private int bucket(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> indexShift) & ~1;
+    }
+}
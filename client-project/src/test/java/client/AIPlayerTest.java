@@ -0,0 +1,59 @@
+package client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import common.GameBoard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The parallel search must give the same answer as the sequential one: at a
+ * fixed depth, every thread count picks the same column with the same score.
+ */
+class AIPlayerTest {
+    /** Deep enough that the root and the ply below it are split. */
+    private static final int DEPTH = 9;
+    private static final int POSITIONS = 28;
+    private static final int TT_ENTRIES = 1 << 18;
+    private static final int[] THREADS = { 1, 2, 4, 8 };
+
+    @Test
+    void parallelSearchMatchesSequential() {
+        for (GameBoard board : randomPositions(new Random(5), POSITIONS)) {
+            int side = board.playerToMove();
+            AIPlayer reference = new AIPlayer(side, DEPTH, TT_ENTRIES, 1);
+            int col   = reference.chooseColumn(board);
+            int score = reference.getLastStats().getScore();
+            for (int threads : THREADS) {
+                AIPlayer ai = new AIPlayer(side, DEPTH, TT_ENTRIES, threads);
+                String where = threads + " threads, position " + board.serialize();
+                assertEquals(col,   ai.chooseColumn(board),       "column, " + where);
+                assertEquals(score, ai.getLastStats().getScore(), "score, " + where);
+            }
+        }
+    }
+
+    /** Positions 4 to 20 plies into random games, with no four on the board. */
+    static List<GameBoard> randomPositions(Random rnd, int count) {
+        List<GameBoard> positions = new ArrayList<>(count);
+        while (positions.size() < count) {
+            GameBoard b = new GameBoard();
+            int plies = 4 + rnd.nextInt(17);
+            boolean over = false;
+            for (int i = 0; i < plies && !over; i++) {
+                int col;
+                do {
+                    col = rnd.nextInt(GameBoard.COLS);
+                } while (!b.isValidMove(col));
+                b.play(col);
+                over = b.checkWin(1) || b.checkWin(2);
+            }
+            if (!over) positions.add(b);
+        }
+        return positions;
+    }
+}
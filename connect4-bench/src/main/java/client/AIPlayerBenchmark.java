@@ -0,0 +1,94 @@
+package client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import common.GameBoard;
+
+/**
+ * One fixed-depth AIPlayer move on each position of a fixed set. Every
+ * invocation first makes the player forget its earlier searches, so the
+ * transposition table holds nothing from them; forgetSearches measures that
+ * step alone, to subtract from the others. searchRate runs the same
+ * searches in throughput mode and adds the search's own statistics as
+ * per-second rates (nodes/s, leaves/s, ...).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AIPlayerBenchmark {
+    /**
+     * 2^12 entries (64 KB): clearing it takes about 1.5 us, well under the
+     * time of all but the shortest searches here.
+     */
+    private static final int TT_ENTRIES = 1 << 12;
+
+    @Param({ "4", "6", "8" })
+    public int depth;
+
+    /** Columns played from the empty board: opening, early and middle game. */
+    @Param({ "", "33", "3342", "332244", "33224415" })
+    public String moves;
+
+    private GameBoard board;
+    private AIPlayer  ai;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = new GameBoard();
+        for (char ch : moves.toCharArray()) board.play(ch - '0');
+        ai = new AIPlayer(board.playerToMove(), depth, TT_ENTRIES);
+    }
+
+    /** Totals from SearchStats; JMH reports each as a rate. */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long nodes;
+        public long leaves;
+        public long ttHits;
+        public long cutoffs;
+    }
+
+    @Benchmark
+    public int chooseColumn() {
+        ai.forgetSearches();
+        return ai.chooseColumn(board);
+    }
+
+    @Benchmark
+    public AIPlayer forgetSearches() {
+        ai.forgetSearches();
+        return ai;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int searchRate(Counters counters) {
+        ai.forgetSearches();
+        int col = ai.chooseColumn(board);
+        SearchStats s = ai.getLastStats();
+        counters.nodes   += s.getNodes();
+        counters.leaves  += s.getLeaves();
+        counters.ttHits  += s.getTtHits();
+        counters.cutoffs += s.getTotalCutoffs();
+        return col;
+    }
+}
@@ -0,0 +1,45 @@
+package client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import common.GameBoard;
+
+/**
+ * Parsing a BOARD payload into the canvas, as the client does for every
+ * board update from the server. The canvas is never shown.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class GameBoardCanvasBenchmark {
+    private GameBoardCanvas canvas;
+    private String          payload;
+
+    @Setup
+    public void setup() {
+        canvas = new GameBoardCanvas();
+        GameBoard b = new GameBoard();
+        for (char ch : "332244115566".toCharArray()) b.play(ch - '0');
+        payload = b.serialize();
+    }
+
+    @Benchmark
+    public GameBoardCanvas setBoardState() {
+        canvas.setBoardState(payload);
+        return canvas;
+    }
+}
@@ -0,0 +1,68 @@
+package client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import common.GameBoard;
+
+/**
+ * Wall-clock time of a fixed-depth AIPlayer search over the same set of
+ * positions for each thread count, so the parallel speedup is the ratio of
+ * the threads=1 score to the others. Every search starts cold. Only
+ * meaningful on a machine with at least as many free cores as threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ParallelSearchBenchmark {
+    private static final int TT_ENTRIES = 1 << 18;
+
+    /** Columns played from the empty board: opening to middle game. */
+    private static final String[] POSITIONS = { "", "33", "3342", "334422", "33221145" };
+
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    @Param({ "10" })
+    public int depth;
+
+    private GameBoard[] boards;
+    private AIPlayer[]  players;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boards  = new GameBoard[POSITIONS.length];
+        players = new AIPlayer[POSITIONS.length];
+        for (int i = 0; i < POSITIONS.length; i++) {
+            boards[i] = new GameBoard();
+            for (char ch : POSITIONS[i].toCharArray()) boards[i].play(ch - '0');
+            players[i] = new AIPlayer(boards[i].playerToMove(), depth, TT_ENTRIES, threads);
+        }
+    }
+
+    /** One search of every position; returns the columns so none is dead code. */
+    @Benchmark
+    public int searchAll() {
+        int cols = 0;
+        for (int i = 0; i < boards.length; i++) {
+            players[i].forgetSearches();
+            cols = cols * 7 + players[i].chooseColumn(boards[i]);
+        }
+        return cols;
+    }
+}
@@ -0,0 +1,73 @@
+package common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GameBoard primitives on a fixed position. Each position is given as the
+ * columns played from the empty board.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBoardBenchmark {
+    /** Opening, middle game and a nearly full board. */
+    @Param({ "3323", "332244115566", "3323443255116600114422556666" })
+    public String moves;
+
+    private GameBoard board;
+    private int       col;
+
+    @Setup
+    public void setup() {
+        board = position(moves);
+        col = 0;
+        while (!board.isValidMove(col)) col++;
+    }
+
+    /** A drop followed by undo, so the position stays the same. */
+    @Benchmark
+    public int dropToken() {
+        int row = board.dropToken(col, board.playerToMove());
+        board.undo();
+        return row;
+    }
+
+    @Benchmark
+    public boolean checkWin() {
+        return board.checkWin(1) | board.checkWin(2);
+    }
+
+    /** Lengths 2 and 3, the ones the AI evaluation asks for. */
+    @Benchmark
+    public int countSequences() {
+        return board.countSequences(1, 2) + board.countSequences(1, 3)
+             + board.countSequences(2, 2) + board.countSequences(2, 3);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return board.serialize();
+    }
+
+    /** The board after playing the given column digits from the start. */
+    static GameBoard position(String moves) {
+        GameBoard b = new GameBoard();
+        for (char ch : moves.toCharArray()) b.play(ch - '0');
+        return b;
+    }
+}
@@ -0,0 +1,79 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import common.Protocol;
+
+/**
+ * Lobby command dispatch in ClientHandler: matching the line and running the
+ * read-only handlers, with replies queued for the handler's writer thread,
+ * which discards them. The handler is logged in as a registered user with
+ * {@link #FRIENDS} friends, so STATS and FRIEND_LIST look up real entries.
+ * Replies the writer has not caught up with are dropped rather than
+ * disconnecting the handler. User data is read from (and created in)
+ * userdata/ under the working directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dconnect4.server.slowClient=drop")
+@State(Scope.Thread)
+public class ClientHandlerBenchmark {
+    private static final String USER     = "bench";
+    private static final String PASSWORD = "bench";
+    private static final int FRIENDS = 10;
+
+    @Param({ Protocol.STATS_REQUEST, Protocol.FRIEND_LIST_REQUEST, "NO_SUCH_COMMAND:x" })
+    public String line;
+
+    private ClientHandler handler;
+    /** Held so the level set below is not lost to garbage collection. */
+    private Logger        serverLog;
+
+    @Setup
+    public void setup() {
+        serverLog = Logger.getLogger("server");
+        serverLog.setLevel(Level.OFF);
+        UserManager.register(USER, PASSWORD);
+        for (int i = 0; i < FRIENDS; i++) {
+            UserManager.register(USER + "-friend-" + i, PASSWORD);
+            UserManager.addFriend(USER, USER + "-friend-" + i);
+        }
+        handler = new ClientHandler(null,
+                                    new BufferedReader(Reader.nullReader()),
+                                    OutputStream.nullOutputStream());
+        if (!handler.login(USER, PASSWORD)) {
+            throw new IllegalStateException("Cannot log in as " + USER);
+        }
+    }
+
+    @TearDown
+    public void logout() {
+        GameServer.userLogout(USER);
+    }
+
+    @Benchmark
+    public ClientHandler handleLobbyCommand() {
+        handler.handleLobbyCommand(line);
+        return handler;
+    }
+}
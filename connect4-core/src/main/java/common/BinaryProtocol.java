@@ -0,0 +1,318 @@
+package common;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BinaryProtocol: a compact encoding of the {@link Protocol} commands.
+ *
+ * A client asks for it by adding the version to the features of its login,
+ * "LOGIN:user:pass:BIN1". A server that speaks it lists it in its answer,
+ * "LOGIN_SUCCESS:BIN1", and from then on both sides send frames instead
+ * of lines. An answer without it means the connection stays on text.
+ * The client must wait for the answer before sending its first frame.
+ *
+ * A frame is a big-endian u16 length, then that many bytes: a one-byte
+ * {@link Op} and its payload. A move is one byte (the column), a board two
+ * longs (the stones of players 1 and 2, laid out as in {@link GameBoard}),
+ * and the usual status and game-over lines one {@link Status} byte. Other
+ * text travels as UTF-8.
+ *
+ * Both sides keep working with the text commands: {@link #encode} turns a
+ * line into a frame and {@link #toText} a frame back into the line, so the
+ * binary protocol changes only what crosses the wire.
+ */
+public final class BinaryProtocol {
+    private BinaryProtocol() {}
+
+    /** Protocol version offered at login. */
+    public static final String VERSION = "BIN1";
+
+    /** Largest frame body: what fits the u16 length. */
+    public static final int MAX_FRAME = 0xFFFF;
+
+    /** First byte of a frame body; the ordinal is the wire value, so only ever append. */
+    public enum Op {
+        TEXT,                  // any other line, UTF-8
+        // client to server
+        MOVE,                  // u8 column
+        LEAVE,
+        REPLAY,                // u8 1 = yes, 0 = no
+        JOIN_QUEUE,
+        FRIEND_LIST_REQUEST,
+        FRIEND_ADD,            // UTF-8 name
+        STATS_REQUEST,
+        // server to client
+        QUEUE_JOINED,
+        GAME_START,            // u8 player
+        YOUR_TURN,
+        STATUS,                // u8 Status, or Status.OTHER and UTF-8 text
+        BOARD,                 // i64 player 1 stones, i64 player 2 stones
+        GAMEOVER,              // u8 Status, or Status.OTHER and UTF-8 text
+        END,                   // UTF-8 prompt
+        ERROR,                 // UTF-8 reason
+        CHAT,                  // UTF-8 text, either direction
+        FRIEND_LIST_RESPONSE,  // UTF-8 list
+        FRIEND_ADD_SUCCESS,
+        FRIEND_ADD_ERROR,      // UTF-8 reason
+        STATS_RESPONSE,        // i32 wins, i32 losses, i32 draws
+        MOVE_APPLIED,          // u16 seq, u8 column, u8 row, u8 player
+        RESYNC;
+
+        private static final Op[] VALUES = values();
+    }
+
+    /** The fixed STATUS and GAMEOVER texts; the ordinal is the wire value. */
+    public enum Status {
+        OTHER(null),
+        WAITING_FOR_OPPONENT("Waiting for opponent..."),
+        SESSION_ENDING("Session ending."),
+        PLAYER_1_WINS("Player 1 wins!"),
+        PLAYER_2_WINS("Player 2 wins!"),
+        DRAW("Draw!"),
+        OPPONENT_DISCONNECTED("Opponent disconnected.");
+
+        private static final Status[] VALUES = values();
+
+        private final String text;
+
+        Status(String text) {
+            this.text = text;
+        }
+
+        public String text() {
+            return text;
+        }
+
+        static Status of(String text) {
+            for (Status s : VALUES) {
+                if (text.equals(s.text)) return s;
+            }
+            return OTHER;
+        }
+    }
+
+    /** Frame for one text command, length prefix included. */
+    public static byte[] encode(String line) {
+        int colon = line.indexOf(':');
+        String head = colon < 0 ? line : line.substring(0, colon);
+        String arg  = colon < 0 ? ""   : line.substring(colon + 1);
+        switch (head) {
+            case Protocol.MOVE:
+                try {
+                    int col = Integer.parseInt(arg.trim());
+                    if (col >= 0 && col < 256) return frame(Op.MOVE, (byte) col);
+                } catch (NumberFormatException ignored) {
+                    // not a column: sent as text, and rejected as such
+                }
+                break;
+            case "yes":                          return frame(Op.REPLAY, (byte) 1);
+            case "no":                           return frame(Op.REPLAY, (byte) 0);
+            case Protocol.LEAVE:                 return frame(Op.LEAVE);
+            case Protocol.JOIN_QUEUE:            return frame(Op.JOIN_QUEUE);
+            case Protocol.FRIEND_LIST_REQUEST:   return frame(Op.FRIEND_LIST_REQUEST);
+            case Protocol.FRIEND_ADD:            return frame(Op.FRIEND_ADD, arg);
+            case Protocol.STATS_REQUEST:         return frame(Op.STATS_REQUEST);
+            case Protocol.QUEUE_JOINED:          return frame(Op.QUEUE_JOINED);
+            case Protocol.YOUR_TURN:             return frame(Op.YOUR_TURN);
+            case Protocol.END:                   return frame(Op.END, arg);
+            case Protocol.ERROR:                 return frame(Op.ERROR, arg);
+            case Protocol.CHAT:                  return frame(Op.CHAT, arg);
+            case Protocol.FRIEND_LIST_RESPONSE:  return frame(Op.FRIEND_LIST_RESPONSE, arg);
+            case Protocol.FRIEND_ADD_SUCCESS:    return frame(Op.FRIEND_ADD_SUCCESS);
+            case Protocol.FRIEND_ADD_ERROR:      return frame(Op.FRIEND_ADD_ERROR, arg);
+            case Protocol.STATUS:                return statusFrame(Op.STATUS, arg);
+            case Protocol.GAMEOVER:              return statusFrame(Op.GAMEOVER, arg);
+            case Protocol.GAME_START:
+                if (arg.startsWith("You are Player 1")) return frame(Op.GAME_START, (byte) 1);
+                if (arg.startsWith("You are Player 2")) return frame(Op.GAME_START, (byte) 2);
+                break;
+            case Protocol.STATS_RESPONSE: {
+                String[] n = arg.split(",");
+                if (n.length == 3) {
+                    try {
+                        ByteBuffer b = start(Op.STATS_RESPONSE, 12);
+                        for (String s : n) b.putInt(Integer.parseInt(s.trim()));
+                        return b.array();
+                    } catch (NumberFormatException ignored) {
+                        // sent as text
+                    }
+                }
+                break;
+            }
+            case Protocol.RESYNC:                return frame(Op.RESYNC);
+            case Protocol.MOVE_APPLIED: {
+                String[] n = arg.split(",");
+                if (n.length == 4) {
+                    try {
+                        ByteBuffer b = start(Op.MOVE_APPLIED, 5);
+                        b.putShort((short) Integer.parseInt(n[0].trim()));
+                        for (int i = 1; i < 4; i++) b.put((byte) Integer.parseInt(n[i].trim()));
+                        return b.array();
+                    } catch (NumberFormatException ignored) {
+                        // sent as text
+                    }
+                }
+                break;
+            }
+            case Protocol.BOARD: {
+                long[] stones = parseBoard(arg);
+                return encodeBoard(stones[0], stones[1]);
+            }
+            default:
+                break;
+        }
+        return frame(Op.TEXT, line);
+    }
+
+    /** BOARD frame for the given stones of players 1 and 2. */
+    public static byte[] encodeBoard(long player1, long player2) {
+        ByteBuffer b = start(Op.BOARD, 16);
+        b.putLong(player1).putLong(player2);
+        return b.array();
+    }
+
+    /** Op of a frame body as returned by {@link #readFrame}. */
+    public static Op op(ByteBuffer body) {
+        int code = body.get(body.position()) & 0xFF;
+        if (code >= Op.VALUES.length) throw new IllegalArgumentException("Unknown op " + code);
+        return Op.VALUES[code];
+    }
+
+    /** Player 1's stones in a BOARD frame body. */
+    public static long boardPlayer1(ByteBuffer body) {
+        return body.getLong(body.position() + 1);
+    }
+
+    /** Player 2's stones in a BOARD frame body. */
+    public static long boardPlayer2(ByteBuffer body) {
+        return body.getLong(body.position() + 9);
+    }
+
+    /** The text command a frame body stands for. */
+    public static String toText(ByteBuffer body) {
+        Op op = op(body);
+        ByteBuffer p = body.duplicate();
+        p.position(body.position() + 1);
+        switch (op) {
+            case MOVE:                 return Protocol.MOVE + ":" + (p.get() & 0xFF);
+            case REPLAY:               return p.get() != 0 ? "yes" : "no";
+            case LEAVE:                return Protocol.LEAVE;
+            case JOIN_QUEUE:           return Protocol.JOIN_QUEUE;
+            case FRIEND_LIST_REQUEST:  return Protocol.FRIEND_LIST_REQUEST;
+            case FRIEND_ADD:           return Protocol.FRIEND_ADD + ":" + utf8(p);
+            case STATS_REQUEST:        return Protocol.STATS_REQUEST;
+            case QUEUE_JOINED:         return Protocol.QUEUE_JOINED;
+            case GAME_START: {
+                int player = p.get();
+                return Protocol.GAME_START + ":You are Player " + player
+                    + (player == 1 ? " (Red)" : " (Yellow)");
+            }
+            case YOUR_TURN:            return Protocol.YOUR_TURN;
+            case STATUS:               return Protocol.STATUS + ":" + statusText(p);
+            case GAMEOVER:             return Protocol.GAMEOVER + ":" + statusText(p);
+            case BOARD:                return Protocol.BOARD + ":" + serializeBoard(p.getLong(), p.getLong());
+            case END:                  return Protocol.END + ":" + utf8(p);
+            case ERROR:                return Protocol.ERROR + ":" + utf8(p);
+            case CHAT:                 return Protocol.CHAT + ":" + utf8(p);
+            case FRIEND_LIST_RESPONSE: return Protocol.FRIEND_LIST_RESPONSE + ":" + utf8(p);
+            case FRIEND_ADD_SUCCESS:   return Protocol.FRIEND_ADD_SUCCESS;
+            case FRIEND_ADD_ERROR:     return Protocol.FRIEND_ADD_ERROR + ":" + utf8(p);
+            case STATS_RESPONSE:
+                return Protocol.STATS_RESPONSE + ":" + p.getInt() + "," + p.getInt() + "," + p.getInt();
+            case MOVE_APPLIED:
+                return Protocol.MOVE_APPLIED + ":" + (p.getShort() & 0xFFFF) + ","
+                    + p.get() + "," + p.get() + "," + p.get();
+            case RESYNC:               return Protocol.RESYNC;
+            default:                   return utf8(p);
+        }
+    }
+
+    /** Read one frame body (op and payload), or null at end of stream. */
+    public static ByteBuffer readFrame(DataInputStream in) throws IOException {
+        int hi = in.read();
+        if (hi < 0) return null;
+        int len = (hi << 8) | in.readUnsignedByte();
+        if (len == 0) throw new IOException("Empty frame");
+        byte[] body = new byte[len];
+        try {
+            in.readFully(body);
+        } catch (EOFException e) {
+            return null;
+        }
+        return ByteBuffer.wrap(body);
+    }
+
+    private static byte[] frame(Op op, byte... payload) {
+        ByteBuffer b = start(op, payload.length);
+        b.put(payload);
+        return b.array();
+    }
+
+    private static byte[] frame(Op op, String text) {
+        return frame(op, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] statusFrame(Op op, String text) {
+        Status s = Status.of(text);
+        if (s != Status.OTHER) return frame(op, (byte) s.ordinal());
+        byte[] utf = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer b = start(op, 1 + utf.length);
+        b.put((byte) Status.OTHER.ordinal()).put(utf);
+        return b.array();
+    }
+
+    /** A frame buffer with the length and op written, positioned at the payload. */
+    private static ByteBuffer start(Op op, int payload) {
+        int len = 1 + payload;
+        if (len > MAX_FRAME) throw new IllegalArgumentException("Frame too long: " + len);
+        ByteBuffer b = ByteBuffer.allocate(2 + len);
+        b.putShort((short) len).put((byte) op.ordinal());
+        return b;
+    }
+
+    private static String statusText(ByteBuffer p) {
+        int code = p.get() & 0xFF;
+        if (code != Status.OTHER.ordinal() && code < Status.VALUES.length) {
+            return Status.VALUES[code].text();
+        }
+        return utf8(p);
+    }
+
+    private static String utf8(ByteBuffer p) {
+        return new String(p.array(), p.arrayOffset() + p.position(), p.remaining(), StandardCharsets.UTF_8);
+    }
+
+    /** Same text as {@link GameBoard#serialize()} for the given stones. */
+    static String serializeBoard(long player1, long player2) {
+        StringBuilder sb = new StringBuilder(2 * GameBoard.ROWS * GameBoard.COLS);
+        for (int r = 0; r < GameBoard.ROWS; r++) {
+            for (int c = 0; c < GameBoard.COLS; c++) {
+                long bit = 1L << (c * GameBoard.H1 + GameBoard.ROWS - 1 - r);
+                sb.append((player1 & bit) != 0 ? 1 : (player2 & bit) != 0 ? 2 : 0);
+                if (c < GameBoard.COLS - 1) sb.append(',');
+            }
+            if (r < GameBoard.ROWS - 1) sb.append(';');
+        }
+        return sb.toString();
+    }
+
+    /** Stones of players 1 and 2 from {@link GameBoard#serialize()} text. */
+    static long[] parseBoard(String text) {
+        long[] stones = new long[2];
+        String[] rows = text.split(";");
+        for (int r = 0; r < GameBoard.ROWS && r < rows.length; r++) {
+            String[] cells = rows[r].split(",");
+            for (int c = 0; c < GameBoard.COLS && c < cells.length; c++) {
+                long bit = 1L << (c * GameBoard.H1 + GameBoard.ROWS - 1 - r);
+                String v = cells[c].trim();
+                if (v.equals("1")) stones[0] |= bit;
+                else if (v.equals("2")) stones[1] |= bit;
+            }
+        }
+        return stones;
+    }
+}
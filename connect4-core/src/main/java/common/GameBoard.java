@@ -0,0 +1,265 @@
+// connect4-core/src/main/java/common/GameBoard.java
+
+package common;
+
+/**
+ * GameBoard: core logic for Connect Four, shared by the server's game
+ * sessions and the client's single-player AI.
+ *
+ * The position is held as one bitboard per player plus a height per column.
+ * Each column takes ROWS + 1 bits (bottom row first); the extra bit on top of
+ * every column is always empty, so the shift-and-mask line tests below never
+ * wrap from one column into the next.
+ *
+ * A board is owned by one thread at a time and does no locking of its own.
+ */
+public class GameBoard {
+    public static final int ROWS = 6;
+    public static final int COLS = 7;
+
+    /** Bits per column: ROWS playable cells plus one empty sentinel. */
+    public static final int H1 = ROWS + 1;
+
+    /** What a move did to the game. */
+    public enum Result { INVALID, CONTINUE, WIN, DRAW }
+
+    /** For each bit, the mask of its eight neighbours (off-board bits are never set). */
+    private static final long[] NEIGHBOURS = new long[COLS * H1];
+    static {
+        for (int i = 0; i < NEIGHBOURS.length; i++) {
+            long bit = 1L << i;
+            for (int d : new int[] { 1, H1, H1 + 1, H1 - 1 }) {
+                NEIGHBOURS[i] |= (bit >>> d) | (bit << d);
+            }
+        }
+    }
+
+    private final long[] bitboards;
+    private final int[]  height;
+    /** Columns played so far, oldest first; moveCount is the stack pointer. */
+    private final int[]  moves;
+    private int          moveCount;
+    /** Per player: runs of two and of three, kept up to date by drop/undo. */
+    private final int[]  pairs;
+    private final int[]  triples;
+    /** Runs added by each move on the stack (pairs | triples << 8), for undo. */
+    private final int[]  runDeltas;
+
+    /** Empty board constructor */
+    public GameBoard() {
+        bitboards = new long[2];
+        height    = new int[COLS];
+        moves     = new int[ROWS * COLS];
+        pairs     = new int[2];
+        triples   = new int[2];
+        runDeltas = new int[ROWS * COLS];
+    }
+
+    /** Copy constructor */
+    private GameBoard(GameBoard b) {
+        bitboards = b.bitboards.clone();
+        height    = b.height.clone();
+        moves     = b.moves.clone();
+        moveCount = b.moveCount;
+        pairs     = b.pairs.clone();
+        triples   = b.triples.clone();
+        runDeltas = b.runDeltas.clone();
+    }
+
+    /** Drop a token for player (1 or 2). Returns the row, or –1 if invalid. */
+    public int dropToken(int col, int player) {
+        if (!isValidMove(col)) return -1;
+        int h = height[col]++;
+        int i = col * H1 + h;
+        bitboards[player - 1] |= 1L << i;
+        addRuns(player - 1, i);
+        moves[moveCount++] = col;
+        return ROWS - 1 - h;
+    }
+
+    /**
+     * Drop a token for the side to move, in place. The caller must check
+     * isValidMove first; search uses this together with undo() so that
+     * exploring a child position allocates nothing.
+     */
+    public void play(int col) {
+        dropToken(col, playerToMove());
+    }
+
+    /**
+     * Drop a token for player (1 or 2) and report the outcome. A win is
+     * found with a few shifts of that player's bitboard, whatever the
+     * position.
+     */
+    public Result play(int col, int player) {
+        if (dropToken(col, player) < 0) return Result.INVALID;
+        if (checkWin(player)) return Result.WIN;
+        return isFull() ? Result.DRAW : Result.CONTINUE;
+    }
+
+    /** Take back the most recent move made by play or dropToken. */
+    public void undo() {
+        int col = moves[--moveCount];
+        long bit = 1L << (col * H1 + --height[col]);
+        int p = (bitboards[0] & bit) != 0 ? 0 : 1;
+        bitboards[p] &= ~bit;
+        pairs[p]   -= runDeltas[moveCount] & 0xFF;
+        triples[p] -= runDeltas[moveCount] >>> 8;
+    }
+
+    /** Player (1 or 2) whose turn it is, assuming player 1 moved first. */
+    public int playerToMove() {
+        return 1 + (moveCount & 1);
+    }
+
+    /** Number of tokens on the board. */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /** Row (0 = top) of the most recent token, or -1 on an empty board. */
+    public int getLastRow() {
+        return moveCount == 0 ? -1 : ROWS - height[moves[moveCount - 1]];
+    }
+
+    /** Bitboard of the given player's stones, in the column layout described above. */
+    public long stones(int player) {
+        return bitboards[player - 1];
+    }
+
+    /** Number of tokens already in the given column. */
+    public int columnHeight(int col) {
+        return height[col];
+    }
+
+    public boolean isValidMove(int col) {
+        return col >= 0 && col < COLS && height[col] < ROWS;
+    }
+
+    public boolean isFull() {
+        return moveCount == ROWS * COLS;
+    }
+
+    /**
+     * Returns true if the given player has four in a row anywhere.
+     */
+    public boolean checkWin(int player) {
+        return hasFour(bitboards[player - 1]);
+    }
+
+    /** Return a deep copy for search. */
+    public GameBoard copy() {
+        return new GameBoard(this);
+    }
+
+    /**
+     * Count how many contiguous sequences of exactly `length` the given player has,
+     * unblocked by opponent. Used by the AI heuristic.
+     *
+     * Lengths 2 and 3 are answered from counts maintained on every drop and
+     * undo, so a search leaf is scored in constant time.
+     */
+    public int countSequences(int player, int length) {
+        if (length == 2 || length == 3) {
+            int n = (length == 2 ? pairs : triples)[player - 1];
+            assert n == recountSequences(player, length) : "stale run count";
+            return n;
+        }
+        return recountSequences(player, length);
+    }
+
+    /**
+     * Same result as countSequences, always recounted across the whole board.
+     * Reference for the incremental counts.
+     */
+    public int recountSequences(int player, int length) {
+        long b = bitboards[player - 1];
+        return Long.bitCount(runs(b, 1,      length))   // vertical
+             + Long.bitCount(runs(b, H1,     length))   // horizontal
+             + Long.bitCount(runs(b, H1 + 1, length))   // diagonal up-right
+             + Long.bitCount(runs(b, H1 - 1, length));  // diagonal down-right
+    }
+
+    /** Serialize to "r0c0,r0c1,…;r1c0,..." format for your GUI. */
+    public String serialize() {
+        StringBuilder sb = new StringBuilder(2 * ROWS * COLS);
+        for (int r = 0; r < ROWS; r++) {
+            for (int c = 0; c < COLS; c++) {
+                sb.append(cell(r, c));
+                if (c < COLS - 1) sb.append(',');
+            }
+            if (r < ROWS - 1) sb.append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Unique 49-bit key for the current position: player 1's stones plus
+     * the occupied mask. Per column the sum stays below 2^(ROWS+1), so no
+     * carry crosses into the next column.
+     */
+    public long key() {
+        return bitboards[0] + (bitboards[0] | bitboards[1]);
+    }
+
+    /** Key of the left-right mirror image of the position with this key. */
+    public static long mirrorKey(long key) {
+        long colMask = (1L << H1) - 1;
+        long m = 0;
+        for (int c = 0; c < COLS; c++) {
+            m |= ((key >>> (c * H1)) & colMask) << ((COLS - 1 - c) * H1);
+        }
+        return m;
+    }
+
+    /** Owner (0, 1 or 2) of the cell at row r (0 = top) and column c. */
+    public int cell(int r, int c) {
+        long bit = 1L << (c * H1 + ROWS - 1 - r);
+        if ((bitboards[0] & bit) != 0) return 1;
+        if ((bitboards[1] & bit) != 0) return 2;
+        return 0;
+    }
+
+    /**
+     * Add the runs of two and three completed by the stone just placed on
+     * bit i of player p, and remember the change for undo. Only windows
+     * through that one cell can change.
+     */
+    private void addRuns(int p, int i) {
+        long b   = bitboards[p];
+        long bit = 1L << i;
+        int dPairs   = Long.bitCount(b & NEIGHBOURS[i]);
+        int dTriples = runsThrough(b, bit, 1)
+                     + runsThrough(b, bit, H1)
+                     + runsThrough(b, bit, H1 + 1)
+                     + runsThrough(b, bit, H1 - 1);
+        pairs[p]   += dPairs;
+        triples[p] += dTriples;
+        runDeltas[moveCount] = dPairs | (dTriples << 8);
+    }
+
+    /** Runs of three along direction d that contain the stone on `bit`. */
+    private static int runsThrough(long b, long bit, int d) {
+        long pairStarts = b & (b >>> d);         // x and x+d both set
+        long gapStarts  = b & (b >>> (2 * d));   // x and x+2d both set
+        return Long.bitCount(pairStarts & ((bit >>> (2 * d)) | (bit << d)))
+             + Long.bitCount(gapStarts & (bit >>> d));
+    }
+
+    /** True if the bitboard contains four aligned stones in any direction. */
+    private static boolean hasFour(long b) {
+        return runs(b, 1, 4) != 0
+            || runs(b, H1, 4) != 0
+            || runs(b, H1 + 1, 4) != 0
+            || runs(b, H1 - 1, 4) != 0;
+    }
+
+    /** Bits that start a run of `length` stones along shift direction d. */
+    private static long runs(long b, int d, int length) {
+        long m = b;
+        for (int k = 1; k < length; k++) {
+            m &= b >>> (k * d);
+        }
+        return m;
+    }
+}
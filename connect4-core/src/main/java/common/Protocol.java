@@ -30,6 +30,15 @@ public final class Protocol {
     public static final String LEAVE               = "LEAVE"; 
     public static final String PROMPT            = "PROMPT";
 
+    // Board updates. A client that adds DELTA to its login gets
+    // MOVE_APPLIED:seq,col,row,player after each move instead of a BOARD;
+    // seq is the move's number in the game, and a full BOARD (seq = its
+    // stone count) still comes at game start. On a gap the client sends
+    // RESYNC and gets a BOARD back.
+    public static final String DELTA             = "DELTA";
+    public static final String MOVE_APPLIED      = "MOVE_APPLIED";
+    public static final String RESYNC            = "RESYNC";
+
     // Friends
     public static final String FRIEND_LIST_REQUEST  = "FRIEND_LIST_REQUEST";
     public static final String FRIEND_LIST_RESPONSE = "FRIEND_LIST_RESPONSE";
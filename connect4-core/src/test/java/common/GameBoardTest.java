@@ -0,0 +1,83 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the run counts kept by play/undo against a recount of the whole
+ * board, and the position keys against their mirror images, over many
+ * random games.
+ */
+class GameBoardTest {
+    private static final int GAMES = 3000;
+
+    @Test
+    void incrementalRunCountsMatchRecount() {
+        Random rnd = new Random(342);
+        for (int g = 0; g < GAMES; g++) {
+            GameBoard b = new GameBoard();
+            while (!b.isFull()) {
+                if (b.getMoveCount() > 0 && rnd.nextInt(4) == 0) {
+                    b.undo();
+                } else {
+                    b.play(randomMove(b, rnd));
+                }
+                assertCounts(b, g);
+
+                GameBoard c = b.copy();
+                assertCounts(c, g);
+                if (!c.isFull()) {
+                    c.play(randomMove(c, rnd));
+                    assertCounts(c, g);
+                    c.undo();
+                    assertCounts(c, g);
+                }
+            }
+            // take the whole game back
+            while (b.getMoveCount() > 0) {
+                b.undo();
+                assertCounts(b, g);
+            }
+        }
+    }
+
+    @Test
+    void mirrorKeyRoundTrips() {
+        Random rnd = new Random(2025);
+        for (int g = 0; g < GAMES; g++) {
+            GameBoard b = new GameBoard();
+            GameBoard m = new GameBoard();
+            while (!b.isFull()) {
+                int col = randomMove(b, rnd);
+                b.play(col);
+                m.play(GameBoard.COLS - 1 - col);
+
+                long key = b.key();
+                assertEquals(key, GameBoard.mirrorKey(GameBoard.mirrorKey(key)), "game " + g);
+                assertEquals(m.key(), GameBoard.mirrorKey(key), "game " + g);
+                assertEquals(key, GameBoard.mirrorKey(m.key()), "game " + g);
+                assertEquals(key, b.copy().key(), "game " + g);
+            }
+        }
+    }
+
+    private static int randomMove(GameBoard b, Random rnd) {
+        int col;
+        do {
+            col = rnd.nextInt(GameBoard.COLS);
+        } while (!b.isValidMove(col));
+        return col;
+    }
+
+    private static void assertCounts(GameBoard b, int game) {
+        for (int p = 1; p <= 2; p++) {
+            for (int n = 2; n <= 3; n++) {
+                assertEquals(b.recountSequences(p, n), b.countSequences(p, n),
+                    "game " + game + ", player " + p + ", length " + n + ", after " + b.getMoveCount() + " moves");
+            }
+        }
+    }
+}
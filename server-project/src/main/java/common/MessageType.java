@@ -1,10 +0,0 @@
-package common;
-
-/**
- * Types of chat messages.
- */
-public enum MessageType {
-    TEXT,
-    NEWUSER,
-    DISCONNECT;
-}
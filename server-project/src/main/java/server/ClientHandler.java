@@ -2,28 +2,56 @@ package server;
 
 import java.io.*;
 import java.net.Socket;
-import java.net.SocketException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import common.BinaryProtocol;
+import common.GameBoard;
 import common.Protocol;
 
-public class ClientHandler implements Runnable {
+public class ClientHandler implements Runnable, PlayerConnection {
     private static final Logger log = Logger.getLogger(ClientHandler.class.getName());
 
     private final Socket        socket;
     private final BufferedReader in;
-    private final PrintWriter    out;
     private String               username;
 
-    // Used to block while in a game and resume back in the lobby
-    private volatile boolean inGame = false;
-    private final Object     gameLock = new Object();
+    // Replies are queued by whichever thread sends them and written by this
+    // client's writer thread, so no one else ever waits for its socket.
+    private final OutputStream  out;
+    private final OutboundQueue outbound = new OutboundQueue();
+    private final AtomicBoolean writerStarted = new AtomicBoolean();
+
+    // Set once the client has asked for the binary protocol at login.
+    // Messages are encoded and queued under sendLock, so no line can be
+    // queued after the switch to frames.
+    private volatile boolean    binary;
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private volatile boolean    deltas;
+
+    // The game this client is in, set by matchmaking. While it is on, the
+    // lines read here are handed to it instead of to the lobby.
+    private volatile GameSession session;
+    private boolean              queued;
 
     public ClientHandler(Socket socket) throws IOException {
+        this(socket,
+             new BufferedReader(new InputStreamReader(socket.getInputStream())),
+             new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /** For driving a handler without a real connection, e.g. from benchmarks. */
+    ClientHandler(Socket socket, BufferedReader in, OutputStream out) {
         this.socket = socket;
-        this.in     = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        this.out    = new PrintWriter(socket.getOutputStream(), true);
+        this.in     = in;
+        this.out    = out;
     }
 
     @Override
@@ -42,10 +70,25 @@ public class ClientHandler implements Runnable {
                     );
                 }
                 else if (line.startsWith(Protocol.LOGIN + ":")) {
+                    // LOGIN:user:pass[:feature...]; the answer lists those taken up
                     String[] parts = line.substring((Protocol.LOGIN + ":").length()).split(":");
-                    if (parts.length == 2 && GameServer.userLogin(parts[0], parts[1], this)) {
-                        username = parts[0];
-                        sendMessage(Protocol.LOGIN_SUCCESS);
+                    if (parts.length >= 2 && login(parts[0], parts[1])) {
+                        boolean binary = false;
+                        StringBuilder reply = new StringBuilder(Protocol.LOGIN_SUCCESS);
+                        for (int i = 2; i < parts.length; i++) {
+                            if (parts[i].equals(BinaryProtocol.VERSION)) binary = true;
+                            else if (parts[i].equals(Protocol.DELTA)) deltas = true;
+                            else continue;
+                            reply.append(':').append(parts[i]);
+                        }
+                        // the last line; nothing else may be queued in between
+                        sendLock.lock();
+                        try {
+                            sendMessage(reply.toString());
+                            this.binary = binary;
+                        } finally {
+                            sendLock.unlock();
+                        }
                         break;
                     } else {
                         sendMessage(Protocol.ERROR + ":Login failed");
@@ -62,94 +105,190 @@ public class ClientHandler implements Runnable {
             }
 
             // ===== LOBBY PHASE =====
-            while ((line = in.readLine()) != null) {
-                log.fine("[" + username + "] " + line);
-
-                if (Protocol.FRIEND_LIST_REQUEST.equals(line)) {
-                    GameServer.requestFriends(this);
-                }
-                else if (Protocol.STATS_REQUEST.equals(line)) {
-                    GameServer.requestStats(this);
-                }
-                else if (Protocol.JOIN_QUEUE.equals(line)) {
-                    inGame = true;
-                    GameServer.addWaitingClient(this);
-                    // wait until GameSession signals us back
-                    synchronized (gameLock) {
-                        gameLock.wait();
-                    }
-                    inGame = false;
-                }
-                else if (line.startsWith(Protocol.FRIEND_ADD + ":")) {
-                    String friend = line.substring((Protocol.FRIEND_ADD + ":").length());
-                    boolean ok = GameServer.addFriend(username, friend);
-                    sendMessage(ok
-                        ? Protocol.FRIEND_ADD_SUCCESS
-                        : Protocol.FRIEND_ADD_ERROR + ":Cannot add friend"
-                    );
+            if (binary) {
+                // nothing is buffered in `in`: the client waits for the answer to its login
+                DataInputStream frames = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                ByteBuffer frame;
+                while ((frame = BinaryProtocol.readFrame(frames)) != null) {
+                    handleLine(BinaryProtocol.toText(frame));
                 }
-                else {
-                    log.warning("Unknown command from " + username + ": " + line);
-                    sendMessage(Protocol.ERROR + ":Unknown command");
+            } else {
+                while ((line = in.readLine()) != null) {
+                    handleLine(line);
                 }
             }
-        } catch (IOException e) {
+        } catch (IOException | IllegalArgumentException | BufferUnderflowException e) {
+            // a bad frame ends the connection like a broken one
             log.log(Level.INFO, "Connection lost for " + username, e);
-        } catch (InterruptedException e) {
-            log.log(Level.WARNING, "Interrupted waiting for game to finish", e);
         } finally {
             cleanup();
         }
     }
 
+    /** Log in as user; false if the password is wrong or user is already online. */
+    boolean login(String user, String pass) {
+        if (!GameServer.userLogin(user, pass, this)) return false;
+        username = user;
+        return true;
+    }
+
+    /** Act on one line received after login: in the game, the queue or the lobby. */
+    private void handleLine(String line) {
+        GameSession s = session;
+        if (s != null) {
+            queued = false;
+            if (s.onMessage(this, line)) return;
+            // the game is over; back in the lobby
+            session = null;
+        } else if (queued) {
+            onQueuedCommand(line);
+            return;
+        }
+        handleLobbyCommand(line);
+    }
+
     /**
-     * Called by GameSession when it’s time to return to the lobby.
+     * Waiting for an opponent: LEAVE goes back to the lobby, anything else is
+     * dropped. If the LEAVE crossed with matchmaking, the session has been
+     * set by the time removeWaitingClient fails, and it gets the LEAVE.
      */
-    public void signalGameOver() {
-        synchronized (gameLock) {
-            gameLock.notify();
+    private void onQueuedCommand(String line) {
+        if (!Protocol.LEAVE.equalsIgnoreCase(line.trim())) return;
+        if (GameServer.removeWaitingClient(this)) {
+            queued = false;
+            sendMessage(Protocol.STATUS + ":Session ending.");
+        } else {
+            handleLine(line);
         }
     }
 
     /**
-     * Allows the server (e.g. GameSession) to set a SO_TIMEOUT
-     * on this client's socket.
+     * Act on one line received in the lobby. JOIN_QUEUE returns at once;
+     * the game it leads to arrives through {@link #enterSession}.
      */
-    public void setReadTimeout(int millis) throws SocketException {
-        socket.setSoTimeout(millis);
+    void handleLobbyCommand(String line) {
+        log.fine("[" + username + "] " + line);
+
+        if (Protocol.FRIEND_LIST_REQUEST.equals(line)) {
+            GameServer.requestFriends(this);
+        }
+        else if (Protocol.STATS_REQUEST.equals(line)) {
+            GameServer.requestStats(this);
+        }
+        else if (Protocol.JOIN_QUEUE.equals(line)) {
+            queued = true;
+            GameServer.addWaitingClient(this);
+        }
+        else if (line.startsWith(Protocol.FRIEND_ADD + ":")) {
+            String friend = line.substring((Protocol.FRIEND_ADD + ":").length());
+            boolean ok = GameServer.addFriend(username, friend);
+            sendMessage(ok
+                ? Protocol.FRIEND_ADD_SUCCESS
+                : Protocol.FRIEND_ADD_ERROR + ":Cannot add friend"
+            );
+        }
+        else {
+            log.warning("Unknown command from " + username + ": " + line);
+            sendMessage(Protocol.ERROR + ":Unknown command");
+        }
+    }
+
+    /** Called by matchmaking, before the session sends anything. */
+    void enterSession(GameSession s) {
+        session = s;
     }
 
     /**
-     * Non-blocking check: returns true if there's data ready to be read
-     * from the client socket.
+     * Called by GameSession when it’s time to return to the lobby. Nothing to
+     * do here: the next line read finds the session over.
      */
-    public boolean hasData() {
-        try {
-            return in.ready();
-        } catch (IOException e) {
-            return false;
-        }
+    @Override
+    public void signalGameOver() {
     }
 
-    /** Send one line back to the client. */
+    /** Queue one line for the client; returns at once. */
+    @Override
     public void sendMessage(String msg) {
-        out.println(msg);
+        sendLock.lock();
+        try {
+            enqueue(binary ? BinaryProtocol.encode(msg) : line(msg), false);
+        } finally {
+            sendLock.unlock();
+        }
         log.fine("To " + username + ": " + msg);
     }
 
-    /** Read one line from the client (blocking). */
-    public String readMessage() throws IOException {
-        return in.readLine();
+    /** Queue the whole board, marked as one a newer board replaces. */
+    @Override
+    public void sendBoard(GameBoard board) {
+        sendLock.lock();
+        try {
+            enqueue(binary
+                ? BinaryProtocol.encodeBoard(board.stones(1), board.stones(2))
+                : line(Protocol.BOARD + ":" + board.serialize()), true);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /** As PrintWriter.println wrote it. */
+    private static byte[] line(String msg) {
+        return (msg + System.lineSeparator()).getBytes(Charset.defaultCharset());
+    }
+
+    private void enqueue(byte[] bytes, boolean board) {
+        if (writerStarted.compareAndSet(false, true)) {
+            GameServer.startThread(this::writeLoop,
+                socket == null ? "ClientWriter" : "ClientWriter-" + socket.getPort());
+        }
+        if (!outbound.offer(ByteBuffer.wrap(bytes), board)) {
+            log.warning(username + " has " + OutboundQueue.LIMIT + " messages unread; disconnecting");
+            outbound.close();
+            close();
+        }
+    }
+
+    /** The writer thread: everything queued since the last write goes out in one flush. */
+    private void writeLoop() {
+        List<ByteBuffer> batch = new ArrayList<>();
+        try {
+            while (outbound.take(batch)) {
+                for (ByteBuffer b : batch) {
+                    out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (IOException e) {
+            // the reader finds the connection gone and cleans up
+            log.log(Level.FINE, "Write failed for " + username, e);
+            outbound.close();
+            close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean acceptsDeltas() {
+        return deltas;
     }
 
     /** Return this client's username. */
+    @Override
     public String getUsername() {
         return username;
     }
 
     /** Clean up on disconnect or exit. */
     private void cleanup() {
+        outbound.close();
         GameServer.removeWaitingClient(this);
+        GameSession s = session;
+        if (s != null) {
+            session = null;
+            s.onDisconnect(this);
+        }
         if (username != null) {
             GameServer.userLogout(username);
         }
@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.*;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.*;
 import javax.swing.SwingUtilities;
 
@@ -13,17 +15,46 @@ import server.chat.ChatServer;
 /**
  * GameServer: accepts game connections, matchmaking,
  * starts ChatServer on port 5555, and logs to console & GUI.
+ *
+ * By default every connection gets a ClientHandler thread, which also hands
+ * its player's moves to the GameSession; games have no thread of their own.
+ * With -Dconnect4.server=nio connections are served by a
+ * {@link NioGameServer} instead: a few event loops (-Dconnect4.server.loops,
+ * default one per core) and no thread per player. With
+ * -Dconnect4.server=virtual the threads are virtual threads, which needs a
+ * Java 21 or later runtime; the code blocks on j.u.c. locks, not monitors,
+ * so waiting players do not pin carrier threads.
+ *
+ * Replies to a client are never written by the thread that sends them but
+ * queued for that connection's writer, so a client that stops reading holds
+ * up no one else. Its queue takes -Dconnect4.server.outboundLimit messages
+ * (default 256); then -Dconnect4.server.slowClient=collapse (the default),
+ * drop or disconnect decides, see {@link OutboundQueue}. The writer is a
+ * thread of its own, so in THREADS mode a connection costs two platform
+ * threads; a blocked write then holds up only its own client. For many
+ * connections use virtual threads or NIO instead.
  */
 public class GameServer {
     private static final int PORT      = 12345;
     private static final int CHAT_PORT = 5555;
     private static final Logger log    = Logger.getLogger(GameServer.class.getName());
 
+    /** How connections and games are run. */
+    enum Mode { THREADS, VIRTUAL, NIO }
+
+    private static Mode          mode    = Mode.THREADS;
+    /** Creates connection threads in THREADS and VIRTUAL mode. */
+    private static ThreadFactory threads = Thread::new;
+
     // Track online users and matchmaking queue
-    private static final Map<String, ClientHandler> onlineUsers     = Collections.synchronizedMap(new HashMap<>());
-    private static final List<ClientHandler>        waitingClients  = Collections.synchronizedList(new ArrayList<>());
+    private static final Map<String, PlayerConnection> onlineUsers    = Collections.synchronizedMap(new HashMap<>());
+    private static final List<PlayerConnection>        waitingClients = new ArrayList<>();
+    private static final ReentrantLock                 queueLock      = new ReentrantLock();
 
     public static void main(String[] args) throws IOException {
+        mode = Mode.valueOf(System.getProperty("connect4.server", "threads").toUpperCase(Locale.ROOT));
+        if (mode == Mode.VIRTUAL) threads = virtualThreadFactory();
+
         // 1) Start chat server
         new ChatServer(CHAT_PORT).start();
         log.info("ChatServer started on port " + CHAT_PORT);
@@ -46,7 +77,15 @@ public class GameServer {
         taHandler.setLevel(Level.INFO);
         root.addHandler(taHandler);
 
-        log.info("=== GameServer starting on port " + PORT + " ===");
+        log.info("=== GameServer starting on port " + PORT + " (" + mode + ") ===");
+        UserManager.load();
+
+        if (mode == Mode.NIO) {
+            int loops = Integer.getInteger("connect4.server.loops",
+                                           Runtime.getRuntime().availableProcessors());
+            new NioGameServer(PORT, loops).run();
+            return;
+        }
 
         // 4) Accept loop for game clients
         try (ServerSocket ss = new ServerSocket(PORT)) {
@@ -54,13 +93,14 @@ public class GameServer {
             while (true) {
                 Socket sock = ss.accept();
                 log.info("New game connection from " + sock.getRemoteSocketAddress());
+                sock.setTcpNoDelay(true);  // its writer sends all that is pending at once
                 ClientHandler handler = new ClientHandler(sock);
-                new Thread(handler, "ClientHandler-" + sock.getPort()).start();
+                startThread(handler, "ClientHandler-" + sock.getPort());
             }
         }
     }
 
-    public static boolean userLogin(String user, String pass, ClientHandler ch) {
+    public static boolean userLogin(String user, String pass, PlayerConnection ch) {
         if (!UserManager.authenticate(user, pass)) {
             log.info("Authentication failed for user: " + user);
             return false;
@@ -80,31 +120,70 @@ public class GameServer {
         }
     }
 
-    public static void addWaitingClient(ClientHandler ch) {
-        synchronized (waitingClients) {
+    /**
+     * A factory for virtual threads, looked up at run time so the server
+     * still builds for and runs on Java 11.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                                        .getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later (running "
+                + System.getProperty("java.version") + ")", e);
+        }
+    }
+
+    static void startThread(Runnable task, String name) {
+        Thread t = threads.newThread(task);
+        t.setName(name);
+        t.start();
+    }
+
+    public static void addWaitingClient(PlayerConnection ch) {
+        queueLock.lock();
+        try {
             waitingClients.add(ch);
             log.info("Added to queue: " + ch.getUsername() + " (size=" + waitingClients.size() + ")");
             ch.sendMessage(Protocol.QUEUE_JOINED);
             if (waitingClients.size() >= 2) {
-                ClientHandler p1 = waitingClients.remove(0);
-                ClientHandler p2 = waitingClients.remove(0);
+                PlayerConnection p1 = waitingClients.remove(0);
+                PlayerConnection p2 = waitingClients.remove(0);
                 log.info("Matchmaking pair: " + p1.getUsername() + " vs " + p2.getUsername());
-                new Thread(new GameSession(p1, p2),
-                           "GameSession-" + p1.getUsername() + "-" + p2.getUsername())
-                    .start();
+                startSession(p1, p2);
             }
+        } finally {
+            queueLock.unlock();
         }
     }
 
-    public static void removeWaitingClient(ClientHandler ch) {
-        synchronized (waitingClients) {
+    private static void startSession(PlayerConnection p1, PlayerConnection p2) {
+        if (mode == Mode.NIO) {
+            NioGameServer.startSession((NioConnection) p1, (NioConnection) p2);
+        } else {
+            GameSession session = new GameSession(p1, p2);
+            ((ClientHandler) p1).enterSession(session);
+            ((ClientHandler) p2).enterSession(session);
+            session.start();
+        }
+    }
+
+    /** Returns false if the client was not waiting, e.g. because it has just been paired. */
+    public static boolean removeWaitingClient(PlayerConnection ch) {
+        queueLock.lock();
+        try {
             if (waitingClients.remove(ch)) {
                 log.info("Removed from queue: " + ch.getUsername());
+                return true;
             }
+            return false;
+        } finally {
+            queueLock.unlock();
         }
     }
 
-    public static void requestFriends(ClientHandler ch) {
+    public static void requestFriends(PlayerConnection ch) {
         Set<String> friends = UserManager.getFriends(ch.getUsername());
         StringBuilder sb = new StringBuilder();
         for (String f : friends) {
@@ -121,7 +200,7 @@ public class GameServer {
         return ok;
     }
 
-    public static void requestStats(ClientHandler ch) {
+    public static void requestStats(PlayerConnection ch) {
         UserManager.Stats s = UserManager.getStats(ch.getUsername());
         String payload = s.wins + "," + s.losses + "," + s.draws;
         log.info("Stats for " + ch.getUsername() + ": " + payload);
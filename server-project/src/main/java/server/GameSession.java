@@ -1,147 +1,189 @@
 package server;
 
-import java.io.IOException;
-import java.net.SocketTimeoutException;
-import java.util.logging.Level;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
+import common.GameBoard;
 import common.Protocol;
 import server.UserManager.Result;
 
-public class GameSession implements Runnable {
+/**
+ * GameSession: one game session between two players, driven by the lines
+ * they send. Each player's own reader (a ClientHandler thread or an
+ * NioConnection event loop) hands every line it reads during the game to
+ * {@link #onMessage}, so a move or a LEAVE from either side is acted on as
+ * soon as it arrives, and a game waiting for a move has no thread at all.
+ *
+ * The two players are read by different threads, so every entry point takes
+ * the session lock; the only work done under it is updating the board,
+ * sending replies and recording results. It is a ReentrantLock so that
+ * virtual threads waiting for it do not pin their carriers.
+ */
+public class GameSession {
     private static final Logger log = Logger.getLogger(GameSession.class.getName());
-    private final ClientHandler p1, p2;
-    private GameBoard board;
-    private int currentPlayer;
-    private boolean running;
 
-    public GameSession(ClientHandler p1, ClientHandler p2) {
+    private enum State { PLAYING, REPLAY_P1, REPLAY_P2, OVER }
+
+    private final PlayerConnection p1, p2;
+    private GameBoard board = new GameBoard();
+    private int       currentPlayer = 1;
+    private State     state = State.PLAYING;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public GameSession(PlayerConnection p1, PlayerConnection p2) {
         this.p1 = p1;
         this.p2 = p2;
-        this.board = new GameBoard();
-        this.currentPlayer = 1;
-        this.running = true;
-    }
-
-    @Override
-    public void run() {
-        log.info("Starting session: " + p1.getUsername() + " vs " + p2.getUsername());
-        sendGameStart();
-
-        outer:
-        while (running) {
-            boolean gameOver = false;
-
-            // Main game loop
-            while (!gameOver && running) {
-                ClientHandler current = (currentPlayer == 1 ? p1 : p2);
-                ClientHandler other   = (currentPlayer == 1 ? p2 : p1);
-
-                // Tell both sides who's up
-                current.sendMessage(Protocol.YOUR_TURN);
-                other.sendMessage(Protocol.STATUS + ":Waiting for opponent...");
-                log.info("Waiting for move from " + current.getUsername());
-
-                String msg = null;
-
-                // Temporarily timeout reads so we can poll both sockets
-                try {
-                    current.setReadTimeout(500);  // 500ms granularity
-                    while (running) {
-                        try {
-                            msg = current.readMessage();
-                            break;  // got input from current
-                        } catch (SocketTimeoutException ste) {
-                            // timeout: check for LEAVE on either side
-                            if (checkQuit(other, current)) break outer;
-                            if (checkQuit(current, other)) break outer;
-                            // no quit, loop again
-                        }
-                    }
-                } catch (IOException ioe) {
-                    log.log(Level.WARNING, "Error during timed read setup", ioe);
-                    running = false;
-                    break;
-                } finally {
-                    try { current.setReadTimeout(0); }
-                    catch (IOException ignored) {}
-                }
-
-                // if session was aborted by a quit, break out
-                if (!running) break;
-
-                if (msg == null) {
-                    // clean disconnect
-                    handleDisconnect(current, other);
-                    gameOver = true;
-                    break;
-                }
-
-                msg = msg.trim();
-                if (Protocol.LEAVE.equalsIgnoreCase(msg)) {
-                    // current player quit
-                    log.info(current.getUsername() + " left mid-game");
-                    other.sendMessage(Protocol.STATUS + ":Session ending.");
-                    recordWin(currentPlayer == 1 ? 2 : 1);
-                    running  = false;
-                    break;
-                }
-
-                // --- normal MOVE handling ---
-                if (msg.startsWith(Protocol.MOVE + ":")) {
-                    int col;
-                    try {
-                        col = Integer.parseInt(msg.substring((Protocol.MOVE + ":").length()).trim());
-                    } catch (NumberFormatException ex) {
-                        current.sendMessage(Protocol.ERROR + ":Invalid move format");
-                        continue;
-                    }
-                    int row = board.dropToken(col, currentPlayer);
-                    if (row < 0) {
-                        current.sendMessage(Protocol.ERROR + ":Column full or invalid");
-                        continue;
-                    }
-                    log.info(current.getUsername() + " placed at col=" + col + ", row=" + row);
-                    broadcastBoard();
-
-                    if (board.checkWin(currentPlayer)) {
-                        broadcastMessage(Protocol.GAMEOVER + ":Player " + currentPlayer + " wins!");
-                        recordWin(currentPlayer);
-                        gameOver = true;
-                        break;
-                    }
-                    if (board.isFull()) {
-                        broadcastMessage(Protocol.GAMEOVER + ":Draw!");
-                        recordDraw();
-                        gameOver = true;
-                        break;
-                    }
-                    currentPlayer = (currentPlayer == 1 ? 2 : 1);
-                }
-                // chat
-                else if (msg.startsWith(Protocol.CHAT + ":")) {
-                    broadcastMessage(msg);
-                }
-                else {
-                    current.sendMessage(Protocol.ERROR + ":Unknown command");
-                }
-            }
+    }
 
-            if (!running) break;
+    /** Send the opening messages and prompt player 1. */
+    public void start() {
+        lock.lock();
+        try {
+            log.info("Starting session: " + p1.getUsername() + " vs " + p2.getUsername());
+            sendGameStart();
+            promptTurn();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isOver() {
+        lock.lock();
+        try {
+            return state == State.OVER;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Act on one line from {@code from}, one of the two players. Returns
+     * false if the match was already over, in which case the line is the
+     * caller's to handle as a lobby command.
+     */
+    public boolean onMessage(PlayerConnection from, String line) {
+        lock.lock();
+        try {
+            if (state != State.OVER && Protocol.RESYNC.equals(line.trim())) {
+                // the client missed a move; only it gets the whole board again
+                from.sendBoard(board);
+                return true;
+            }
+            switch (state) {
+                case PLAYING:
+                    onGameMessage(from, line.trim());
+                    return true;
+                case REPLAY_P1:
+                    if (from == p1) onReplayAnswer(line);
+                    return true;
+                case REPLAY_P2:
+                    if (from == p2) onReplayAnswer(line);
+                    return true;
+                default:
+                    return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            // if we arrived here via normal game-over, ask replay
-            try {
-                if (!askReplay()) break;
-            } catch (IOException e) {
-                log.log(Level.WARNING, "Error during replay prompt", e);
-                break;
+    /** The connection to {@code who} is gone. */
+    public void onDisconnect(PlayerConnection who) {
+        lock.lock();
+        try {
+            if (state == State.PLAYING) {
+                other(who).sendMessage(Protocol.GAMEOVER + ":Opponent disconnected.");
+                recordWin(who == p1 ? 2 : 1);
+                end();
+            } else if (state != State.OVER) {
+                // no answer to the replay question counts as "no"
+                onReplayAnswer(null);
             }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onGameMessage(PlayerConnection from, String msg) {
+        PlayerConnection current = (currentPlayer == 1 ? p1 : p2);
+        if (Protocol.LEAVE.equalsIgnoreCase(msg)) {
+            log.info(from.getUsername() + " left mid-game");
+            other(from).sendMessage(Protocol.STATUS + ":Session ending.");
+            recordWin(from == p1 ? 2 : 1);
+            end();
+            return;
+        }
+        if (msg.startsWith(Protocol.CHAT + ":")) {
+            broadcastMessage(msg);
+            if (from == current) promptTurn();
+            return;
+        }
+        if (from != current) {
+            // the waiting player may only chat or leave
+            return;
+        }
+
+        if (!msg.startsWith(Protocol.MOVE + ":")) {
+            current.sendMessage(Protocol.ERROR + ":Unknown command");
+            promptTurn();
+            return;
+        }
+        int col;
+        try {
+            col = Integer.parseInt(msg.substring((Protocol.MOVE + ":").length()).trim());
+        } catch (NumberFormatException ex) {
+            current.sendMessage(Protocol.ERROR + ":Invalid move format");
+            promptTurn();
+            return;
+        }
+        GameBoard.Result result = board.play(col, currentPlayer);
+        if (result == GameBoard.Result.INVALID) {
+            current.sendMessage(Protocol.ERROR + ":Column full or invalid");
+            promptTurn();
+            return;
+        }
+        log.info(current.getUsername() + " placed at col=" + col + ", row=" + board.getLastRow());
+        broadcastMove(col);
+
+        if (result == GameBoard.Result.WIN) {
+            broadcastMessage(Protocol.GAMEOVER + ":Player " + currentPlayer + " wins!");
+            recordWin(currentPlayer);
+            askReplay();
+        } else if (result == GameBoard.Result.DRAW) {
+            broadcastMessage(Protocol.GAMEOVER + ":Draw!");
+            recordDraw();
+            askReplay();
+        } else {
+            currentPlayer = (currentPlayer == 1 ? 2 : 1);
+            promptTurn();
+        }
+    }
+
+    /** Player 1 is asked first; player 2 only once player 1 said yes. */
+    private void askReplay() {
+        state = State.REPLAY_P1;
+        p1.sendMessage(Protocol.END + ":Play again? (yes/no)");
+    }
+
+    private void onReplayAnswer(String answer) {
+        if (!"yes".equalsIgnoreCase(answer)) {
+            broadcastMessage(Protocol.STATUS + ":Session ending.");
+            end();
+        } else if (state == State.REPLAY_P1) {
+            state = State.REPLAY_P2;
+            p2.sendMessage(Protocol.END + ":Play again? (yes/no)");
+        } else {
+            state = State.PLAYING;
             board = new GameBoard();
             currentPlayer = 1;
             sendGameStart();
+            promptTurn();
         }
+    }
 
-        // signal both back to lobby
+    /** Signal both players back to the lobby. */
+    private void end() {
+        state = State.OVER;
         p1.sendMessage(Protocol.STATUS + ":Session ending.");
         p2.sendMessage(Protocol.STATUS + ":Session ending.");
         p1.signalGameOver();
@@ -149,25 +191,15 @@ public class GameSession implements Runnable {
         log.info("Session ended: " + p1.getUsername() + " vs " + p2.getUsername());
     }
 
-    /** Returns true if `who` just sent LEAVE; handles win-count and messaging. */
-    private boolean checkQuit(ClientHandler who, ClientHandler other) throws IOException {
-        if (who.hasData()) {
-            String line = who.readMessage();
-            if (line != null && Protocol.LEAVE.equalsIgnoreCase(line.trim())) {
-                log.info(who.getUsername() + " left mid-game");
-                other.sendMessage(Protocol.STATUS + ":Session ending.");
-                if (who == p1) recordWin(2); else recordWin(1);
-                running = false;
-                return true;
-            }
-        }
-        return false;
+    private PlayerConnection other(PlayerConnection who) {
+        return who == p1 ? p2 : p1;
     }
 
-    private void handleDisconnect(ClientHandler from, ClientHandler to) {
-        to.sendMessage(Protocol.GAMEOVER + ":Opponent disconnected.");
-        recordWin(from == p1 ? 2 : 1);
-        running  = false;
+    private void promptTurn() {
+        PlayerConnection current = (currentPlayer == 1 ? p1 : p2);
+        current.sendMessage(Protocol.YOUR_TURN);
+        other(current).sendMessage(Protocol.STATUS + ":Waiting for opponent...");
+        log.fine("Waiting for move from " + current.getUsername());
     }
 
     private void sendGameStart() {
@@ -177,9 +209,21 @@ public class GameSession implements Runnable {
     }
 
     private void broadcastBoard() {
-        String msg = Protocol.BOARD + ":" + board.serialize();
-        p1.sendMessage(msg);
-        p2.sendMessage(msg);
+        p1.sendBoard(board);
+        p2.sendBoard(board);
+    }
+
+    /** The move just played, to each player as a delta or, if it did not ask for those, the whole board. */
+    private void broadcastMove(int col) {
+        String delta = Protocol.MOVE_APPLIED + ":" + board.getMoveCount() + ","
+            + col + "," + board.getLastRow() + "," + currentPlayer;
+        sendMove(p1, delta);
+        sendMove(p2, delta);
+    }
+
+    private void sendMove(PlayerConnection p, String delta) {
+        if (p.acceptsDeltas()) p.sendMessage(delta);
+        else p.sendBoard(board);
     }
 
     private void broadcastMessage(String msg) {
@@ -187,22 +231,6 @@ public class GameSession implements Runnable {
         p2.sendMessage(msg);
     }
 
-    private boolean askReplay() throws IOException {
-        p1.sendMessage(Protocol.END + ":Play again? (yes/no)");
-        String r1 = p1.readMessage();
-        if (!"yes".equalsIgnoreCase(r1)) {
-            broadcastMessage(Protocol.STATUS + ":Session ending.");
-            return false;
-        }
-        p2.sendMessage(Protocol.END + ":Play again? (yes/no)");
-        String r2 = p2.readMessage();
-        if (!"yes".equalsIgnoreCase(r2)) {
-            broadcastMessage(Protocol.STATUS + ":Session ending.");
-            return false;
-        }
-        return true;
-    }
-
     private void recordWin(int player) {
         if (player == 1) {
             UserManager.recordResult(p1.getUsername(), Result.WIN);
@@ -0,0 +1,150 @@
+package server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import common.Protocol;
+
+/**
+ * Load test for the game server: opens many connections, logs each one in
+ * as its own user and keeps them all open and idle, then checks that every
+ * one still gets an answer. Watch the server (threads, heap) while it holds.
+ *
+ * First create the accounts, in the directory the server will run from,
+ * before starting it:
+ *     LoadTest prepare &lt;users&gt;
+ * Then, against the running server:
+ *     LoadTest &lt;host&gt; &lt;users&gt; [port=12345] [sources=K] [hold=seconds]
+ *
+ * Users are named load0, load1, ... with password "load". One client address
+ * can open at most one connection per local port to the server, which limits
+ * a single source to about 28,000 connections on Linux; on the loopback
+ * interface sources=K spreads them over 127.0.0.1 .. 127.0.0.K. Both
+ * processes need an open-file limit (ulimit -n) above the connection count.
+ */
+public class LoadTest {
+    private static final String PASSWORD = "load";
+
+    /** Connections whose login is sent before the answers are read. */
+    private static final int BATCH = 500;
+
+    private static final class Conn {
+        final Socket       socket;
+        final InputStream  in;
+        final OutputStream out;
+
+        Conn(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in     = socket.getInputStream();
+            this.out    = socket.getOutputStream();
+        }
+
+        void send(String line) throws IOException {
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        /** One line, read a byte at a time: no buffer per idle connection. */
+        String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) return null;
+                if (b != '\r') sb.append((char) b);
+            }
+            return sb.toString();
+        }
+
+        /** The next line starting with {@code prefix}, skipping any others. */
+        String expect(String prefix) throws IOException {
+            String line;
+            while ((line = readLine()) != null && !line.startsWith(prefix)) {
+                // e.g. a status line
+            }
+            return line;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("prepare")) {
+            prepare(Integer.parseInt(args[1]));
+            return;
+        }
+        if (args.length < 2) {
+            System.err.println("Usage: LoadTest prepare <users>");
+            System.err.println("       LoadTest <host> <users> [port=12345] [sources=K] [hold=seconds]");
+            System.exit(1);
+        }
+        String host = args[0];
+        int users = Integer.parseInt(args[1]);
+        int port = 12345, sources = 1, hold = 30;
+        for (int i = 2; i < args.length; i++) {
+            String[] kv = args[i].split("=", 2);
+            switch (kv[0]) {
+                case "port":    port    = Integer.parseInt(kv[1]); break;
+                case "sources": sources = Integer.parseInt(kv[1]); break;
+                case "hold":    hold    = Integer.parseInt(kv[1]); break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(1);
+            }
+        }
+        run(host, port, users, sources, hold);
+    }
+
+    private static void prepare(int users) {
+        Map<String, String> accounts = new LinkedHashMap<>();
+        for (int i = 0; i < users; i++) accounts.put("load" + i, PASSWORD);
+        int added = UserManager.registerAll(accounts);
+        UserManager.flush();
+        System.out.println("Registered " + added + " users (" + (users - added) + " existed already)");
+    }
+
+    private static void run(String host, int port, int users, int sources, int hold)
+            throws IOException, InterruptedException {
+        List<Conn> conns = new ArrayList<>(users);
+        long t0 = System.nanoTime();
+        int failed = 0;
+        for (int start = 0; start < users; start += BATCH) {
+            int end = Math.min(users, start + BATCH);
+            for (int i = start; i < end; i++) {
+                Socket s = new Socket();
+                if (sources > 1) s.bind(new InetSocketAddress("127.0.0." + (1 + i % sources), 0));
+                s.connect(new InetSocketAddress(host, port));
+                Conn c = new Conn(s);
+                c.send(Protocol.LOGIN + ":load" + i + ":" + PASSWORD);
+                conns.add(c);
+            }
+            for (int i = start; i < end; i++) {
+                String reply = conns.get(i).readLine();
+                if (!Protocol.LOGIN_SUCCESS.equals(reply)) failed++;
+            }
+            if (end % 5000 == 0 || end == users) {
+                System.out.printf("%,d connected, %,d logins failed, %.1f s%n",
+                    end, failed, (System.nanoTime() - t0) / 1e9);
+            }
+        }
+        System.out.printf("Holding %,d idle connections for %d s%n", conns.size(), hold);
+        Thread.sleep(hold * 1000L);
+
+        long t1 = System.nanoTime();
+        int answered = 0;
+        for (int start = 0; start < conns.size(); start += BATCH) {
+            int end = Math.min(conns.size(), start + BATCH);
+            for (int i = start; i < end; i++) conns.get(i).send(Protocol.STATS_REQUEST);
+            for (int i = start; i < end; i++) {
+                if (conns.get(i).expect(Protocol.STATS_RESPONSE) != null) answered++;
+            }
+        }
+        System.out.printf("%,d of %,d connections answered a stats request in %.1f s%n",
+            answered, conns.size(), (System.nanoTime() - t1) / 1e9);
+        for (Conn c : conns) c.socket.close();
+    }
+}
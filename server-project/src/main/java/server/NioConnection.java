@@ -0,0 +1,378 @@
+package server;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import common.BinaryProtocol;
+import common.GameBoard;
+import common.Protocol;
+
+/**
+ * One client of the {@link NioGameServer}: the login and lobby state machine
+ * of {@link ClientHandler}, run one line at a time on the connection's event
+ * loop instead of by a thread of its own. While a game is on, lines go to
+ * the {@link GameSession}.
+ *
+ * Everything but {@link #sendMessage} and {@link #signalGameOver} runs on
+ * the loop thread. Outgoing lines may come from any thread; they are queued
+ * (bounded, see {@link OutboundQueue}) and written by the loop, all pending
+ * lines in one gathering write.
+ *
+ * A client that logs in with the {@link BinaryProtocol} version gets frames
+ * instead of lines from then on, in both directions; they are turned back
+ * into the same text commands here.
+ */
+class NioConnection implements PlayerConnection {
+    private static final Logger log = Logger.getLogger(NioConnection.class.getName());
+
+    /** Longest line accepted; a client sending more is disconnected. */
+    private static final int MAX_LINE = 8192;
+
+    /** Most buffers handed to one gathering write. */
+    private static final int MAX_GATHER = 64;
+
+    /** Same charset as the reader and writer of ClientHandler. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private enum State { LOGIN, LOBBY, QUEUED, IN_GAME }
+
+    private final NioGameServer.EventLoop loop;
+    private final SocketChannel           channel;
+    private final SelectionKey            key;
+
+    private State  state = State.LOGIN;
+    private GameSession session;
+    /** Set by matchmaking, from any thread, until the loop takes it up. */
+    private volatile GameSession pendingSession;
+    private volatile String username;
+    private boolean closed;
+
+    /** Start of a line, or of a frame with its length, whose end has not arrived yet. */
+    private byte[] partial = new byte[128];
+    private int    partialLength;
+
+    // Set by the login reply; the lock keeps any other message from being
+    // queued between that last line and the switch to frames.
+    private volatile boolean binary;
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private volatile boolean deltas;
+
+    private final OutboundQueue     outbound = new OutboundQueue();
+    /** Taken from outbound, not yet all written; only touched by the loop. */
+    private final ArrayDeque<ByteBuffer> inFlight = new ArrayDeque<>();
+    private final AtomicBoolean     flushScheduled = new AtomicBoolean();
+    private final ByteBuffer[]      gather = new ByteBuffer[MAX_GATHER];
+
+    NioConnection(NioGameServer.EventLoop loop, SocketChannel channel, SelectionKey key) {
+        this.loop    = loop;
+        this.channel = channel;
+        this.key     = key;
+    }
+
+    /**
+     * Read what has arrived into the loop's buffer and handle every complete
+     * line or frame. The login reply may switch to frames in the middle.
+     */
+    void onReadable(ByteBuffer buf) throws IOException {
+        buf.clear();
+        int n = channel.read(buf);
+        if (n < 0) {
+            close();
+            return;
+        }
+        buf.flip();
+        while (buf.hasRemaining() && !closed) {
+            if (binary) readFrame(buf);
+            else readLine(buf);
+        }
+    }
+
+    /** Take bytes up to the next newline and handle the line, if it is complete. */
+    private void readLine(ByteBuffer buf) throws IOException {
+        int start = buf.position(), limit = buf.limit();
+        for (int i = start; i < limit; i++) {
+            if (buf.get(i) != '\n') continue;
+            append(buf, i - start, MAX_LINE);
+            buf.get(); // the newline
+            int len = partialLength;
+            if (len > 0 && partial[len - 1] == '\r') len--;
+            String line = new String(partial, 0, len, CHARSET);
+            partialLength = 0;
+            onLine(line);
+            return;
+        }
+        append(buf, limit - start, MAX_LINE);
+    }
+
+    /** Take bytes of the current frame and handle it, if it is complete. */
+    private void readFrame(ByteBuffer buf) throws IOException {
+        if (partialLength < 2) {
+            append(buf, Math.min(2 - partialLength, buf.remaining()), 2);
+            if (partialLength < 2) return;
+        }
+        int len = (partial[0] & 0xFF) << 8 | (partial[1] & 0xFF);
+        if (len == 0) throw new IOException("Empty frame");
+        append(buf, Math.min(2 + len - partialLength, buf.remaining()), 2 + len);
+        if (partialLength < 2 + len) return;
+        String line;
+        try {
+            line = BinaryProtocol.toText(ByteBuffer.wrap(partial, 2, len));
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IOException("Bad frame", e);
+        }
+        partialLength = 0;
+        onLine(line);
+    }
+
+    /** Move the next {@code len} bytes of the read buffer to what is being assembled. */
+    private void append(ByteBuffer buf, int len, int max) throws IOException {
+        if (partialLength + len > max) {
+            throw new IOException("Message longer than " + max + " bytes");
+        }
+        if (partialLength + len > partial.length) {
+            partial = Arrays.copyOf(partial, Math.min(max, Math.max(partial.length * 2, partialLength + len)));
+        }
+        buf.get(partial, partialLength, len);
+        partialLength += len;
+    }
+
+    private void onLine(String line) {
+        // matchmaking may have paired us while this line was on its way
+        if (state == State.QUEUED) adoptSession();
+        switch (state) {
+            case LOGIN:   onLoginCommand(line); break;
+            case LOBBY:   onLobbyCommand(line); break;
+            case QUEUED:  onQueuedCommand(line); break;
+            case IN_GAME:
+                if (!session.onMessage(this, line)) {
+                    // over, and our signalGameOver has not run yet
+                    leaveSession();
+                    onLobbyCommand(line);
+                }
+                break;
+        }
+    }
+
+    private void onLoginCommand(String line) {
+        log.fine("[login] " + line);
+        if (line.startsWith(Protocol.REGISTER + ":")) {
+            String[] parts = line.substring((Protocol.REGISTER + ":").length()).split(":");
+            boolean ok = parts.length == 2 && UserManager.register(parts[0], parts[1]);
+            sendMessage(ok
+                ? Protocol.REGISTER_SUCCESS
+                : Protocol.REGISTER_ERROR + ":Username exists"
+            );
+        }
+        else if (line.startsWith(Protocol.LOGIN + ":")) {
+            // LOGIN:user:pass[:feature...]; the answer lists those taken up
+            String[] parts = line.substring((Protocol.LOGIN + ":").length()).split(":");
+            if (parts.length >= 2 && GameServer.userLogin(parts[0], parts[1], this)) {
+                username = parts[0];
+                state = State.LOBBY;
+                boolean binary = false;
+                StringBuilder reply = new StringBuilder(Protocol.LOGIN_SUCCESS);
+                for (int i = 2; i < parts.length; i++) {
+                    if (parts[i].equals(BinaryProtocol.VERSION)) binary = true;
+                    else if (parts[i].equals(Protocol.DELTA)) deltas = true;
+                    else continue;
+                    reply.append(':').append(parts[i]);
+                }
+                sendLock.lock();
+                try {
+                    sendMessage(reply.toString());
+                    this.binary = binary;
+                } finally {
+                    sendLock.unlock();
+                }
+            } else {
+                sendMessage(Protocol.ERROR + ":Login failed");
+            }
+        }
+        else {
+            sendMessage(Protocol.ERROR + ":Please register or login first");
+        }
+    }
+
+    private void onLobbyCommand(String line) {
+        log.fine("[" + username + "] " + line);
+
+        if (Protocol.FRIEND_LIST_REQUEST.equals(line)) {
+            GameServer.requestFriends(this);
+        }
+        else if (Protocol.STATS_REQUEST.equals(line)) {
+            GameServer.requestStats(this);
+        }
+        else if (Protocol.JOIN_QUEUE.equals(line)) {
+            state = State.QUEUED;
+            GameServer.addWaitingClient(this);
+        }
+        else if (line.startsWith(Protocol.FRIEND_ADD + ":")) {
+            String friend = line.substring((Protocol.FRIEND_ADD + ":").length());
+            boolean ok = GameServer.addFriend(username, friend);
+            sendMessage(ok
+                ? Protocol.FRIEND_ADD_SUCCESS
+                : Protocol.FRIEND_ADD_ERROR + ":Cannot add friend"
+            );
+        }
+        else {
+            log.warning("Unknown command from " + username + ": " + line);
+            sendMessage(Protocol.ERROR + ":Unknown command");
+        }
+    }
+
+    /**
+     * Waiting for an opponent: LEAVE goes back to the lobby, anything else is
+     * dropped. If matchmaking has just paired us the session is already on its
+     * way to this loop, so the LEAVE is handled again once it has arrived.
+     */
+    private void onQueuedCommand(String line) {
+        if (!Protocol.LEAVE.equalsIgnoreCase(line.trim())) return;
+        if (GameServer.removeWaitingClient(this)) {
+            state = State.LOBBY;
+            sendMessage(Protocol.STATUS + ":Session ending.");
+        } else {
+            loop.execute(() -> onLine(line));
+        }
+    }
+
+    /**
+     * Called by matchmaking, from any loop. The loop takes the session up
+     * when it runs the task or, if a line comes first, before handling it.
+     */
+    void enterSession(GameSession s) {
+        pendingSession = s;
+        loop.execute(this::adoptSession);
+    }
+
+    private void adoptSession() {
+        GameSession s = pendingSession;
+        if (s == null) return;
+        pendingSession = null;
+        if (closed) {
+            s.onDisconnect(this);
+            return;
+        }
+        session = s;
+        state = State.IN_GAME;
+    }
+
+    @Override
+    public void signalGameOver() {
+        loop.execute(() -> {
+            if (session != null && session.isOver()) leaveSession();
+        });
+    }
+
+    private void leaveSession() {
+        session = null;
+        state = State.LOBBY;
+    }
+
+    @Override
+    public void sendMessage(String msg) {
+        sendLock.lock();
+        try {
+            send(binary ? BinaryProtocol.encode(msg) : (msg + "\n").getBytes(CHARSET), false);
+        } finally {
+            sendLock.unlock();
+        }
+        log.fine("To " + username + ": " + msg);
+    }
+
+    @Override
+    public void sendBoard(GameBoard board) {
+        sendLock.lock();
+        try {
+            send(binary
+                ? BinaryProtocol.encodeBoard(board.stones(1), board.stones(2))
+                : (Protocol.BOARD + ":" + board.serialize() + "\n").getBytes(CHARSET), true);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    private void send(byte[] bytes, boolean board) {
+        if (!outbound.offer(ByteBuffer.wrap(bytes), board)) {
+            log.warning(username + " has " + OutboundQueue.LIMIT + " messages unread; disconnecting");
+            outbound.close();
+            loop.execute(this::close);
+            return;
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flushOrClose);
+        }
+    }
+
+    private void flushOrClose() {
+        try {
+            flush();
+        } catch (IOException e) {
+            log.log(Level.FINE, "Connection lost for " + username, e);
+            close();
+        }
+    }
+
+    /**
+     * Write as much of the queue as the socket takes. What is left waits for
+     * the channel to become writable again; meanwhile new messages stay in
+     * the bounded queue, where the slow-client policy applies to them.
+     */
+    void flush() throws IOException {
+        flushScheduled.set(false);
+        if (closed) return;
+        while (true) {
+            if (inFlight.isEmpty()) outbound.drainTo(inFlight);
+            int n = 0;
+            for (ByteBuffer b : inFlight) {
+                gather[n++] = b;
+                if (n == MAX_GATHER) break;
+            }
+            if (n == 0) break;
+            channel.write(gather, 0, n);
+            for (int i = 0; i < n && !gather[i].hasRemaining(); i++) inFlight.poll();
+            boolean blocked = gather[n - 1].hasRemaining();
+            Arrays.fill(gather, 0, n, null);
+            if (blocked) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    @Override
+    public boolean acceptsDeltas() {
+        return deltas;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    /** Close the channel and leave the queue, game and user list; on the loop thread. */
+    void close() {
+        if (closed) return;
+        closed = true;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        outbound.close();
+        inFlight.clear();
+        if (state == State.QUEUED) GameServer.removeWaitingClient(this);
+        if (session != null) session.onDisconnect(this);
+        if (username != null) GameServer.userLogout(username);
+        log.info("Closed connection for " + username);
+    }
+}
@@ -0,0 +1,138 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * NioGameServer: the non-blocking alternative to one thread per client.
+ *
+ * The thread that calls {@link #run()} accepts connections and hands each one
+ * to one of a fixed number of event loops, round robin. A loop owns a
+ * Selector and every connection registered with it: it reads whatever has
+ * arrived, cuts it into lines and feeds them to the connection's login,
+ * lobby or game state machine ({@link NioConnection}, {@link GameSession}),
+ * and writes out queued replies. No thread ever waits on a single client, so
+ * a few loops serve any number of idle players.
+ */
+public class NioGameServer {
+    private static final Logger log = Logger.getLogger(NioGameServer.class.getName());
+
+    /** Socket read size; also the direct buffer each loop reads into. */
+    static final int READ_BUFFER_SIZE = 8192;
+
+    private final int         port;
+    private final EventLoop[] loops;
+
+    public NioGameServer(int port, int loopCount) throws IOException {
+        if (loopCount < 1) throw new IllegalArgumentException("loopCount must be >= 1");
+        this.port  = port;
+        this.loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) loops[i] = new EventLoop(i);
+    }
+
+    /** Start the event loops and accept connections until the thread is stopped. */
+    public void run() throws IOException {
+        for (EventLoop loop : loops) loop.thread.start();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            log.info("GameServer (NIO, " + loops.length + " event loops) listening on port " + port);
+            for (int next = 0; ; next = (next + 1) % loops.length) {
+                SocketChannel ch = server.accept();
+                log.info("New game connection from " + ch.getRemoteAddress());
+                ch.configureBlocking(false);
+                ch.socket().setTcpNoDelay(true);
+                loops[next].register(ch);
+            }
+        }
+    }
+
+    /**
+     * Called by matchmaking: each player enters the session on its own loop
+     * before the session sends anything, so their replies always find it.
+     */
+    static void startSession(NioConnection p1, NioConnection p2) {
+        GameSession session = new GameSession(p1, p2);
+        p1.enterSession(session);
+        p2.enterSession(session);
+        session.start();
+    }
+
+    /** One selector thread and the connections registered with it. */
+    static final class EventLoop implements Runnable {
+        final Thread thread;
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        /** Shared by all of this loop's connections; holds only the current read. */
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread   = new Thread(this, "GameServer-Loop-" + index);
+        }
+
+        /** Run {@code task} on this loop's thread, after the events it is handling now. */
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (Thread.currentThread() != thread) selector.wakeup();
+        }
+
+        void register(SocketChannel ch) {
+            execute(() -> {
+                try {
+                    SelectionKey key = ch.register(selector, SelectionKey.OP_READ);
+                    key.attach(new NioConnection(this, ch, key));
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Could not register connection", e);
+                    try { ch.close(); } catch (IOException ignored) {}
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    log.log(Level.SEVERE, "Selector failed", e);
+                    return;
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    NioConnection conn = (NioConnection) key.attachment();
+                    try {
+                        if (key.isReadable()) conn.onReadable(readBuffer);
+                        if (key.isValid() && key.isWritable()) conn.flush();
+                    } catch (IOException | CancelledKeyException e) {
+                        log.log(Level.FINE, "Connection lost for " + conn.getUsername(), e);
+                        conn.close();
+                    } catch (RuntimeException e) {
+                        log.log(Level.WARNING, "Error handling " + conn.getUsername(), e);
+                        conn.close();
+                    }
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        log.log(Level.WARNING, "Event loop task failed", e);
+                    }
+                }
+            }
+        }
+    }
+}
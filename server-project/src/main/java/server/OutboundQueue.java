@@ -0,0 +1,144 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * The messages waiting to be written to one client, in order, and what to do
+ * when that client stops reading.
+ *
+ * Any thread may {@link #offer} a message; it is never blocked by the
+ * client. The connection's writer takes everything queued at once and writes
+ * it with one flush. At most {@link #LIMIT} messages wait (set with
+ * -Dconnect4.server.outboundLimit); when a client is that far behind,
+ * -Dconnect4.server.slowClient picks the {@link Policy}.
+ */
+final class OutboundQueue {
+    private static final Logger log = Logger.getLogger(OutboundQueue.class.getName());
+
+    /** What a full queue does with one more message. */
+    enum Policy {
+        /** Lose the message. For clients that recover, e.g. with RESYNC. */
+        DROP,
+        /** Close the connection, which its game sees as the player leaving. */
+        DISCONNECT,
+        /**
+         * Throw away queued boards a newer one has made stale; if that frees
+         * no room, disconnect.
+         */
+        COLLAPSE
+    }
+
+    static final int    LIMIT  = Integer.getInteger("connect4.server.outboundLimit", 256);
+    static final Policy POLICY = Policy.valueOf(
+        System.getProperty("connect4.server.slowClient", "collapse").toUpperCase(Locale.ROOT));
+
+    private static final class Entry {
+        final ByteBuffer data;
+        final boolean    board;
+
+        Entry(ByteBuffer data, boolean board) {
+            this.data  = data;
+            this.board = board;
+        }
+    }
+
+    private final int    limit;
+    private final Policy policy;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final ReentrantLock     lock    = new ReentrantLock();
+    private final Condition         ready   = lock.newCondition();
+    private boolean closed;
+
+    OutboundQueue() {
+        this(LIMIT, POLICY);
+    }
+
+    OutboundQueue(int limit, Policy policy) {
+        if (limit < 1) throw new IllegalArgumentException("limit must be >= 1");
+        this.limit  = limit;
+        this.policy = policy;
+    }
+
+    /**
+     * Queue one message; {@code board} marks a whole-board snapshot, which a
+     * later one replaces. Returns false if the client is too far behind and
+     * the connection should be closed.
+     */
+    boolean offer(ByteBuffer data, boolean board) {
+        lock.lock();
+        try {
+            if (closed) return true;
+            if (entries.size() >= limit && !collapse(board)) {
+                if (policy != Policy.DROP) return false;
+                log.fine("Client " + limit + " messages behind, message dropped");
+                return true;
+            }
+            entries.add(new Entry(data, board));
+            ready.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Under COLLAPSE, remove the boards a newer one makes stale; true if there is room now. */
+    private boolean collapse(boolean board) {
+        if (policy != Policy.COLLAPSE) return false;
+        boolean newer = board;
+        for (Iterator<Entry> it = entries.descendingIterator(); it.hasNext(); ) {
+            Entry e = it.next();
+            if (!e.board) continue;
+            if (newer) it.remove();
+            else newer = true;
+        }
+        return entries.size() < limit;
+    }
+
+    /** Move everything queued to {@code to}, without waiting; returns how many. */
+    int drainTo(Collection<ByteBuffer> to) {
+        lock.lock();
+        try {
+            int n = entries.size();
+            for (Entry e : entries) to.add(e.data);
+            entries.clear();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for messages and move them all to {@code to}. Returns false,
+     * with nothing moved, once the queue is closed.
+     */
+    boolean take(Collection<ByteBuffer> to) throws InterruptedException {
+        lock.lock();
+        try {
+            while (entries.isEmpty() && !closed) ready.await();
+            if (closed) return false;
+            drainTo(to);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Throw away what is queued, refuse what comes later and release the writer. */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            entries.clear();
+            ready.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package server;
+
+import common.GameBoard;
+import common.Protocol;
+
+/**
+ * One logged-in player as the lobby and matchmaking see it, whatever the
+ * I/O model behind it: a {@link ClientHandler} thread or an
+ * {@link NioConnection} on an event loop.
+ */
+public interface PlayerConnection {
+    /** Send one line to the client; may be called from any thread. */
+    void sendMessage(String msg);
+
+    /**
+     * Send the whole board. Connections on the binary protocol override this
+     * to send the stones as they are instead of serializing them.
+     */
+    default void sendBoard(GameBoard board) {
+        sendMessage(Protocol.BOARD + ":" + board.serialize());
+    }
+
+    /**
+     * True if the client asked for {@link Protocol#DELTA} at login and so
+     * is sent each move instead of the whole board after it.
+     */
+    default boolean acceptsDeltas() {
+        return false;
+    }
+
+    /** The name this player logged in with, or null before login. */
+    String getUsername();
+
+    /** Called when the player's game session is over and they are back in the lobby. */
+    void signalGameOver();
+}
@@ -6,10 +6,23 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * UserManager: Handles user credentials, stats, and friendships.
  * Persists data to disk in JSON files under userdata/.
+ *
+ * Every method holds one lock, a ReentrantLock rather than the class monitor,
+ * so that a virtual thread waiting for it does not pin its carrier thread.
+ *
+ * Changes are written behind: a change only queues a save, and one
+ * background thread copies the maps under the lock and writes the files
+ * outside it. No caller, an NIO event loop in particular, waits for the
+ * disk, and a burst of changes costs one write. {@link #flush} waits for
+ * the writes; it also runs when the JVM exits.
  */
 public class UserManager {
     private static final File DATA_DIR     = new File("userdata");
@@ -17,11 +30,20 @@ public class UserManager {
     private static final File STATS_FILE   = new File(DATA_DIR, "stats.json");
     private static final File FRIENDS_FILE = new File(DATA_DIR, "friends.json");
 
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectMapper  mapper = new ObjectMapper();
+    private static final ReentrantLock lock   = new ReentrantLock();
     private static Map<String, String>         passwords;
     private static Map<String, Stats>          statsMap;
     private static Map<String, Set<String>>    friendsMap;
 
+    private static final ExecutorService saver = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "UserManager-Save");
+        t.setDaemon(true);
+        return t;
+    });
+    /** A save is queued that has not copied the maps yet; guarded by lock. */
+    private static boolean saveQueued;
+
     static {
         // ensure data directory exists
         if (!DATA_DIR.exists()) {
@@ -41,6 +63,25 @@ public class UserManager {
 
         // Write out blank maps immediately so userdata/*.json always exists
         saveAll();
+        Runtime.getRuntime().addShutdownHook(new Thread(UserManager::flush, "UserManager-Flush"));
+    }
+
+    /**
+     * Load the user data now if that has not happened yet. Servers call this
+     * at startup so that no event loop reads the files on its first login.
+     */
+    static void load() {
+    }
+
+    /** Wait until every change made before this call is on disk. */
+    static void flush() {
+        try {
+            saver.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
     }
 
     private static <T> T loadJson(File file, TypeReference<T> type, T fallback) {
@@ -54,10 +95,30 @@ public class UserManager {
         return fallback;
     }
 
+    /** Queue a save of everything; called under lock. */
     private static void saveAll() {
-        saveJson(PWD_FILE,     passwords);
-        saveJson(STATS_FILE,   statsMap);
-        saveJson(FRIENDS_FILE, friendsMap);
+        if (saveQueued) return;
+        saveQueued = true;
+        saver.execute(UserManager::writeSnapshot);
+    }
+
+    /** On the saver thread: copy the maps under the lock, write them outside it. */
+    private static void writeSnapshot() {
+        Map<String, String>      pwd;
+        Map<String, Stats>       stats   = new HashMap<>();
+        Map<String, Set<String>> friends = new HashMap<>();
+        lock.lock();
+        try {
+            saveQueued = false;
+            pwd = new HashMap<>(passwords);
+            statsMap  .forEach((u, s) -> stats.put(u, s.copy()));
+            friendsMap.forEach((u, f) -> friends.put(u, new HashSet<>(f)));
+        } finally {
+            lock.unlock();
+        }
+        saveJson(PWD_FILE,     pwd);
+        saveJson(STATS_FILE,   stats);
+        saveJson(FRIENDS_FILE, friends);
     }
 
     private static void saveJson(File file, Object data) {
@@ -69,50 +130,102 @@ public class UserManager {
     }
 
     /** Register a new user with password. Returns false if username already taken. */
-    public synchronized static boolean register(String user, String password) {
-        if (passwords.containsKey(user)) return false;
-        passwords.put(user, hash(password));
-        statsMap.put(user, new Stats());
-        friendsMap.put(user, new HashSet<>());
-        saveAll();
-        return true;
+    public static boolean register(String user, String password) {
+        lock.lock();
+        try {
+            if (passwords.containsKey(user)) return false;
+            passwords.put(user, hash(password));
+            statsMap.put(user, new Stats());
+            friendsMap.put(user, new HashSet<>());
+            saveAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Register every user in {@code users} (name to password) that does not
+     * exist yet, saving once at the end; for setting up many accounts, e.g.
+     * for a load test. Returns how many were added.
+     */
+    static int registerAll(Map<String, String> users) {
+        lock.lock();
+        try {
+            int added = 0;
+            for (Map.Entry<String, String> e : users.entrySet()) {
+                if (passwords.putIfAbsent(e.getKey(), hash(e.getValue())) != null) continue;
+                statsMap.put(e.getKey(), new Stats());
+                friendsMap.put(e.getKey(), new HashSet<>());
+                added++;
+            }
+            if (added > 0) saveAll();
+            return added;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** Authenticate an existing user. */
-    public synchronized static boolean authenticate(String user, String password) {
-        return passwords.containsKey(user) && passwords.get(user).equals(hash(password));
+    public static boolean authenticate(String user, String password) {
+        lock.lock();
+        try {
+            return passwords.containsKey(user) && passwords.get(user).equals(hash(password));
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** Retrieve stats for a user (wins/losses/draws). */
-    public synchronized static Stats getStats(String user) {
-        return statsMap.getOrDefault(user, new Stats());
+    public static Stats getStats(String user) {
+        lock.lock();
+        try {
+            return statsMap.getOrDefault(user, new Stats());
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** Retrieve the friend list for a user. */
-    public synchronized static Set<String> getFriends(String user) {
-        return Collections.unmodifiableSet(
-            friendsMap.getOrDefault(user, Collections.emptySet())
-        );
+    public static Set<String> getFriends(String user) {
+        lock.lock();
+        try {
+            return Collections.unmodifiableSet(
+                friendsMap.getOrDefault(user, Collections.emptySet())
+            );
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** Add a friend. Returns false if friend does not exist or is self. */
-    public synchronized static boolean addFriend(String user, String friend) {
-        if (!passwords.containsKey(friend) || user.equals(friend)) return false;
-        boolean added = friendsMap.computeIfAbsent(user, k -> new HashSet<>()).add(friend);
-        if (added) saveAll();
-        return added;
+    public static boolean addFriend(String user, String friend) {
+        lock.lock();
+        try {
+            if (!passwords.containsKey(friend) || user.equals(friend)) return false;
+            boolean added = friendsMap.computeIfAbsent(user, k -> new HashSet<>()).add(friend);
+            if (added) saveAll();
+            return added;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /** Record a game result (WIN, LOSS, DRAW) for a user. */
-    public synchronized static void recordResult(String user, Result r) {
-        Stats s = statsMap.get(user);
-        if (s == null) return;
-        switch (r) {
-            case WIN:   s.wins++;  break;
-            case LOSS:  s.losses++;break;
-            case DRAW:  s.draws++; break;
+    public static void recordResult(String user, Result r) {
+        lock.lock();
+        try {
+            Stats s = statsMap.get(user);
+            if (s == null) return;
+            switch (r) {
+                case WIN:   s.wins++;  break;
+                case LOSS:  s.losses++;break;
+                case DRAW:  s.draws++; break;
+            }
+            saveAll();
+        } finally {
+            lock.unlock();
         }
-        saveAll();
     }
 
     private static String hash(String pwd) {
@@ -124,6 +237,14 @@ public class UserManager {
         public int wins   = 0;
         public int losses = 0;
         public int draws  = 0;
+
+        Stats copy() {
+            Stats c = new Stats();
+            c.wins   = wins;
+            c.losses = losses;
+            c.draws  = draws;
+            return c;
+        }
     }
 
     /** Enumeration of possible game outcomes. */
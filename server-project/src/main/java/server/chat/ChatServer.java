@@ -6,14 +6,31 @@ import common.MessageType;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * ChatServer: accepts sockets on a port, reads Message objects,
  * and broadcasts them to all connected clients.
+ *
+ * A broadcast serializes the message once and only queues the bytes for
+ * each client; every client has its own writer thread, which sends
+ * whatever is queued in one flush. The client list is copy-on-write, so
+ * nothing is locked while sending and a client that stops reading delays
+ * no one else. One that falls {@link #QUEUE_LIMIT} messages behind is
+ * dropped.
  */
 public class ChatServer {
+    private static final Logger log = Logger.getLogger(ChatServer.class.getName());
+
+    /** Messages queued for one client before it is dropped as too slow. */
+    static final int QUEUE_LIMIT = 1024;
+
     private final int port;
-    private final List<ClientThread> clients = Collections.synchronizedList(new ArrayList<>());
+    private final List<ClientThread> clients = new CopyOnWriteArrayList<>();
 
     public ChatServer(int port) {
         this.port = port;
@@ -39,38 +56,60 @@ public class ChatServer {
         t.start();
     }
 
-    /** Broadcasts msg to every client; removes broken connections */
+    /** Queues msg for every client; drops those too far behind to take it */
     private void broadcast(Message msg) {
-        synchronized (clients) {
-            Iterator<ClientThread> it = clients.iterator();
-            while (it.hasNext()) {
-                ClientThread ct = it.next();
-                try {
-                    ct.out.writeObject(msg);
-                    ct.out.flush();
-                } catch (IOException e) {
-                    it.remove();
-                }
+        byte[] frame;
+        try {
+            frame = encode(msg);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Cannot serialize chat message", e);
+            return;
+        }
+        for (ClientThread ct : clients) {
+            if (!ct.outbound.offer(frame) && clients.remove(ct)) {
+                log.warning("Chat client " + ct.id + " has " + QUEUE_LIMIT + " messages unread; dropping it");
+                ct.close();
             }
         }
     }
 
+    /**
+     * msg as every client's ObjectInputStream reads it: a reset, then the
+     * object written by a fresh stream. After the reset the reader expects
+     * just what a fresh stream writes, so the same bytes fit every client
+     * whatever it was sent before.
+     */
+    static byte[] encode(Message msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes) {
+                @Override
+                protected void writeStreamHeader() throws IOException {
+                    writeByte(TC_RESET);
+                }
+            }) {
+            out.writeObject(msg);
+        }
+        return bytes.toByteArray();
+    }
+
     private class ClientThread extends Thread {
         final int id;
         final Socket sock;
-        ObjectOutputStream out;
-        ObjectInputStream  in;
+        final BlockingQueue<byte[]> outbound = new ArrayBlockingQueue<>(QUEUE_LIMIT);
+        private final Thread writer;
 
-        ClientThread(Socket sock) throws IOException {
-            this.sock = sock;
-            this.id   = sock.getPort(); // unique per connection
-            this.out  = new ObjectOutputStream(sock.getOutputStream());
-            this.in   = new ObjectInputStream(sock.getInputStream());
+        ClientThread(Socket sock) {
+            this.sock   = sock;
+            this.id     = sock.getPort(); // unique per connection
+            this.writer = new Thread(this::writeLoop, "ChatWriter-" + id);
+            writer.setDaemon(true);
         }
 
         @Override
         public void run() {
-            try {
+            writer.start();
+            // opened here, not in the accept loop: it waits for the client's stream header
+            try (ObjectInputStream in = new ObjectInputStream(sock.getInputStream())) {
                 while (true) {
                     Message msg = (Message) in.readObject();
                     if (msg == null || msg.type == MessageType.DISCONNECT) break;
@@ -79,9 +118,35 @@ public class ChatServer {
             } catch (Exception ignored) {
             } finally {
                 clients.remove(this);
+                close();
                 broadcast(new Message(id, false));
-                try { sock.close(); } catch (IOException ignored) {}
             }
         }
+
+        /** Sends the stream header, then everything queued, one flush per batch */
+        private void writeLoop() {
+            List<byte[]> batch = new ArrayList<>();
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream()));
+                out.writeShort(ObjectStreamConstants.STREAM_MAGIC);
+                out.writeShort(ObjectStreamConstants.STREAM_VERSION);
+                out.flush();
+                while (true) {
+                    batch.add(outbound.take());
+                    outbound.drainTo(batch);
+                    for (byte[] frame : batch) out.write(frame);
+                    out.flush();
+                    batch.clear();
+                }
+            } catch (IOException | InterruptedException e) {
+                // closed, or the client is gone; its reader cleans up
+                close();
+            }
+        }
+
+        void close() {
+            writer.interrupt();
+            try { sock.close(); } catch (IOException ignored) {}
+        }
     }
 }